@@ -0,0 +1,43 @@
+package tech.flowerbirds;
+
+import com.google.javascript.jscomp.Compiler;
+import com.google.javascript.jscomp.Result;
+import com.google.javascript.jscomp.SourceFile;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单独测量 Compiler.compile，编译选项与工具实际使用的完全一致，不含文件读写
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class ClosureCompileBenchmark {
+
+    @Param({"echarts.js", "test.js"})
+    public String resource;
+
+    private String code;
+
+    @Setup(Level.Trial)
+    public void loadSource() throws IOException {
+        code = new String(BenchmarkSupport.readResource(resource), StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Result compile() {
+        Compiler compiler = new Compiler(new PrintStream(new ByteArrayOutputStream()));
+        return compiler.compile(
+                SourceFile.fromCode("externs.js", ""),
+                SourceFile.fromCode(resource, code),
+                JsCompiler.newCompilerOptions());
+    }
+}
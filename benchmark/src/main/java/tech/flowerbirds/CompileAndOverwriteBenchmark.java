@@ -0,0 +1,53 @@
+package tech.flowerbirds;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个文件端到端（CompileEngine 默认配置）：读取源文件、编译、写临时文件并覆盖源文件
+ * 每次调用前重新写入原始源码，保证每次编译的都是未压缩的输入
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class CompileAndOverwriteBenchmark {
+
+    @Param({"echarts.js", "test.js"})
+    public String resource;
+
+    private byte[] source;
+    private Path workDir;
+    private File target;
+    private CompileEngine engine;
+
+    @Setup(Level.Trial)
+    public void loadSource() throws IOException {
+        engine = new CompileEngine(CompileConfig.builder().build());
+        source = BenchmarkSupport.readResource(resource);
+        workDir = Files.createTempDirectory("jscompiler-bench");
+        target = workDir.resolve(resource).toFile();
+    }
+
+    @Setup(Level.Invocation)
+    public void restoreSource() throws IOException {
+        Files.write(target.toPath(), source);
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() throws IOException {
+        BenchmarkSupport.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public CompileResult compileAndOverwrite() {
+        return engine.compile(target, BenchmarkSupport.silentLog());
+    }
+}
@@ -0,0 +1,44 @@
+package tech.flowerbirds;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * -cloc 模式下的代码行数统计
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CountLinesOfCodeBenchmark {
+
+    @Param({"echarts.js", "test.js"})
+    public String resource;
+
+    private Path workDir;
+    private File file;
+
+    @Setup(Level.Trial)
+    public void writeSource() throws IOException {
+        workDir = Files.createTempDirectory("jscompiler-bench");
+        file = workDir.resolve(resource).toFile();
+        Files.write(file.toPath(), BenchmarkSupport.readResource(resource));
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() throws IOException {
+        BenchmarkSupport.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public long countLinesOfCode() throws IOException {
+        return JsCompiler.countLinesOfCode(file);
+    }
+}
@@ -0,0 +1,65 @@
+package tech.flowerbirds;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 扫描合成目录树：100 个子目录 × 100 个文件 = 1 万个文件（其中每 10 个有 1 个非 JS 文件）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ScanJsFilesBenchmark {
+
+    private static final int DIRECTORIES = 100;
+    private static final int FILES_PER_DIRECTORY = 100;
+
+    private Path root;
+    private CompileEngine engine;
+
+    @Setup(Level.Trial)
+    public void createTree() throws IOException {
+        engine = new CompileEngine(CompileConfig.builder().build());
+        root = Files.createTempDirectory("jscompiler-scan");
+        byte[] content = "var a = 1;\n".getBytes(StandardCharsets.UTF_8);
+        for (int d = 0; d < DIRECTORIES; d++) {
+            Path dir = Files.createDirectories(root.resolve("module" + d).resolve("js"));
+            for (int f = 0; f < FILES_PER_DIRECTORY; f++) {
+                String name = f % 10 == 0 ? "file" + f + ".css" : "file" + f + ".js";
+                Files.write(dir.resolve(name), content);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() throws IOException {
+        BenchmarkSupport.deleteRecursively(root);
+    }
+
+    @Benchmark
+    public List<Path> scanJsFiles() throws IOException {
+        return engine.scan(root);
+    }
+
+    /**
+     * fork/join 并行遍历（与 -scanThreads=4 相同）
+     */
+    @Benchmark
+    public List<File> scanJsFilesParallel() throws IOException {
+        List<File> files = Collections.synchronizedList(new ArrayList<>());
+        new JsFileScanner("src/main/js/test", null, 0, null, 4, System.err).scan(root, files::add);
+        return files;
+    }
+}
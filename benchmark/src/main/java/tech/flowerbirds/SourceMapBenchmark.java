@@ -0,0 +1,75 @@
+package tech.flowerbirds;
+
+import com.google.javascript.jscomp.Compiler;
+import com.google.javascript.jscomp.CompilerOptions;
+import com.google.javascript.jscomp.SourceFile;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 编译 + 生成代码，对比是否同时生成 Source Map（-sourcemap）
+ * 开启时映射在 toSource 中同步记录，再流式写入 .map 文件，两组结果之差即 Source Map 的额外开销
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class SourceMapBenchmark {
+
+    @Param({"echarts.js", "test.js"})
+    public String resource;
+
+    @Param({"false", "true"})
+    public boolean sourceMap;
+
+    private String code;
+    private Path workDir;
+    private File target;
+
+    @Setup(Level.Trial)
+    public void loadSource() throws IOException {
+        code = new String(BenchmarkSupport.readResource(resource), StandardCharsets.UTF_8);
+        workDir = Files.createTempDirectory("jscompiler-bench");
+        target = workDir.resolve(resource).toFile();
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() throws IOException {
+        BenchmarkSupport.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public String compileAndPrint() throws IOException {
+        CompilerOptions options = JsCompiler.newCompilerOptions();
+        if (sourceMap) {
+            SourceMaps.configure(options, Collections.singletonList(target));
+        }
+        Compiler compiler = new Compiler(new PrintStream(new ByteArrayOutputStream()));
+        compiler.compile(
+                SourceFile.fromCode("externs.js", ""),
+                SourceFile.fromCode(target.getAbsolutePath(), code),
+                options);
+        String output = compiler.toSource();
+        if (sourceMap) {
+            // 与工具相同：映射直接流式写入 .map 文件
+            Path mapFile = SourceMaps.mapFile(target.toPath());
+            try (Writer writer = Files.newBufferedWriter(mapFile, StandardCharsets.UTF_8)) {
+                compiler.getSourceMap().appendTo(writer, target.getName());
+            }
+            Files.delete(mapFile);
+        }
+        return output;
+    }
+}
@@ -0,0 +1,287 @@
+package tech.flowerbirds;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 增量编译缓存：以“源码内容 + 编译配置”的哈希为键，在磁盘上保存压缩结果
+ * 命中时直接返回保存的结果，无需再次调用 Compiler.compile
+ * 缓存总大小超过上限时，按最近使用时间（条目文件的修改时间）淘汰最久未使用的条目：
+ * 每批文件结束时检查一次，写入条目后估计的总大小超过上限时也立即淘汰（监听模式、守护进程中一直运行的情况）
+ */
+final class CompileCache {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Path cacheDir;      // 缓存目录
+    private final long maxBytes;      // 缓存大小上限（字节）
+    private final byte[] settings;    // 参与计算键的编译配置
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private final AtomicLong knownBytes = new AtomicLong(-1);  // 估计的缓存总大小，-1 表示尚未统计
+    private final AtomicBoolean evicting = new AtomicBoolean(); // 同一时间只进行一次淘汰
+
+    /**
+     * @param cacheDir 缓存目录，不存在时自动创建
+     * @param maxBytes 缓存大小上限（字节），0 表示不限制
+     * @param settings 编译配置描述（优化级别、输入输出版本、Closure 版本等），任何一项变化都会使旧条目失效
+     */
+    CompileCache(Path cacheDir, long maxBytes, String settings) throws IOException {
+        this.cacheDir = cacheDir;
+        this.maxBytes = maxBytes;
+        this.settings = settings.getBytes(StandardCharsets.UTF_8);
+        Files.createDirectories(cacheDir);
+    }
+
+    /**
+     * 获取当前使用的 Closure Compiler 版本号（读取依赖包中的 pom.properties）
+     */
+    static String closureVersion() {
+        try (InputStream in = com.google.javascript.jscomp.Compiler.class.getResourceAsStream(
+                "/META-INF/maven/com.google.javascript/closure-compiler/pom.properties")) {
+            if (in != null) {
+                Properties props = new Properties();
+                props.load(in);
+                return props.getProperty("version", "unknown");
+            }
+        } catch (IOException e) {
+            // 读取失败时退化为 unknown，仍可使用缓存
+        }
+        return "unknown";
+    }
+
+    /**
+     * 计算源码对应的缓存键
+     */
+    String key(byte[] source) {
+        return key(source, null);
+    }
+
+    /**
+     * 计算源码对应的缓存键
+     * @param fileName 参与计算键的文件名，生成 Source Map 时压缩结果和 Source Map 中都含有文件名，为 null 时不参与
+     */
+    String key(byte[] source, String fileName) {
+        MessageDigest digest = sha256();
+        digest.update(settings);
+        digest.update((byte) 0);
+        if (fileName != null) {
+            digest.update(fileName.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        digest.update(source);
+        return toHex(digest.digest());
+    }
+
+    /**
+     * 读取缓存的压缩结果，命中时刷新条目的使用时间
+     * @return 压缩结果，未命中时返回 null
+     */
+    String get(String key) {
+        return get(key, (Writer) null);
+    }
+
+    /**
+     * 读取缓存的压缩结果，同时把缓存的 Source Map 写入 mapOut
+     * @param mapOut Source Map 的输出，为 null 时只读取压缩结果；缓存中没有 Source Map 时按未命中处理（可能已写出部分内容）
+     * @return 压缩结果，未命中时返回 null
+     */
+    String get(String key, Writer mapOut) {
+        Path entry = entryPath(key);
+        try {
+            if (mapOut != null) {
+                Path map = mapPath(key);
+                try (Reader reader = Files.newBufferedReader(map, StandardCharsets.UTF_8)) {
+                    char[] buffer = new char[8192];
+                    int n;
+                    while ((n = reader.read(buffer)) > 0) {
+                        mapOut.write(buffer, 0, n);
+                    }
+                }
+                Files.setLastModifiedTime(map, FileTime.fromMillis(System.currentTimeMillis()));
+            }
+            byte[] bytes = Files.readAllBytes(entry);
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            hits.incrementAndGet();
+            return new String(bytes, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            misses.incrementAndGet();
+            return null;
+        } catch (IOException e) {
+            // 条目损坏或无法读取时按未命中处理
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * 保存压缩结果（先写临时文件再原子移动，多个线程同时写同一条目也不会产生半截文件）
+     */
+    void put(String key, String output) throws IOException {
+        put(key, output, null);
+    }
+
+    /**
+     * 保存压缩结果及其 Source Map（Source Map 先于压缩结果保存，读取时不会只拿到压缩结果）
+     * @param mapFile 已写出的 Source Map 文件，为 null 时只保存压缩结果
+     */
+    void put(String key, String output, Path mapFile) throws IOException {
+        Path entry = entryPath(key);
+        Files.createDirectories(entry.getParent());
+        if (mapFile != null) {
+            Path temp = entry.resolveSibling(key + "." + UUID.randomUUID().toString().substring(0, 8) + ".tmp");
+            try {
+                Files.copy(mapFile, temp, StandardCopyOption.REPLACE_EXISTING);
+                move(temp, mapPath(key));
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+        Path temp = entry.resolveSibling(key + "." + UUID.randomUUID().toString().substring(0, 8) + ".tmp");
+        byte[] bytes = output.getBytes(StandardCharsets.UTF_8);
+        try {
+            Files.write(temp, bytes);
+            move(temp, entry);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        evictIfOverBudget(bytes.length + (mapFile != null ? Files.size(mapPath(key)) : 0));
+    }
+
+    /**
+     * 写入条目后估计的总大小超过上限时淘汰（第一次写入时统计一次实际大小）
+     * 淘汰失败不影响本次写入，批次结束时还会再检查
+     */
+    private void evictIfOverBudget(long written) {
+        if (maxBytes <= 0) {
+            return;
+        }
+        long total = knownBytes.get() < 0 ? -1 : knownBytes.addAndGet(written);
+        if ((total < 0 || total > maxBytes) && evicting.compareAndSet(false, true)) {
+            try {
+                evict();
+            } catch (IOException e) {
+                // 留到批次结束时再淘汰
+            } finally {
+                evicting.set(false);
+            }
+        }
+    }
+
+    private static void move(Path temp, Path entry) throws IOException {
+        try {
+            Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 缓存总大小超过上限时，删除最久未使用的条目
+     * @return 被淘汰的条目数
+     */
+    int evict() throws IOException {
+        if (maxBytes <= 0) {
+            return 0;
+        }
+        List<Path> paths = new ArrayList<>();
+        List<BasicFileAttributes> attributes = new ArrayList<>();
+        Files.walkFileTree(cacheDir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                // 跳过正在写入的临时文件
+                if (!file.getFileName().toString().endsWith(".tmp")) {
+                    paths.add(file);
+                    attributes.add(attrs);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        long totalBytes = 0;
+        List<Integer> order = new ArrayList<>(paths.size());
+        for (int i = 0; i < paths.size(); i++) {
+            totalBytes += attributes.get(i).size();
+            order.add(i);
+        }
+        if (totalBytes <= maxBytes) {
+            knownBytes.set(totalBytes);
+            return 0;
+        }
+
+        // 按最近使用时间从旧到新排序，依次删除直到低于上限
+        order.sort((a, b) -> attributes.get(a).lastModifiedTime().compareTo(attributes.get(b).lastModifiedTime()));
+        int evicted = 0;
+        for (int index : order) {
+            if (totalBytes <= maxBytes) {
+                break;
+            }
+            if (Files.deleteIfExists(paths.get(index))) {
+                evicted++;
+            }
+            totalBytes -= attributes.get(index).size();
+        }
+        knownBytes.set(totalBytes);
+        return evicted;
+    }
+
+    int hits() {
+        return hits.get();
+    }
+
+    int misses() {
+        return misses.get();
+    }
+
+    Path directory() {
+        return cacheDir;
+    }
+
+    /**
+     * 条目路径：按键的前两位分目录，避免单个目录下文件过多
+     */
+    private Path entryPath(String key) {
+        return cacheDir.resolve(key.substring(0, 2)).resolve(key + ".js");
+    }
+
+    private Path mapPath(String key) {
+        return cacheDir.resolve(key.substring(0, 2)).resolve(key + ".js.map");
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
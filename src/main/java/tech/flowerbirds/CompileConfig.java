@@ -0,0 +1,448 @@
+package tech.flowerbirds;
+
+import com.google.javascript.jscomp.CompilationLevel;
+import com.google.javascript.jscomp.CompilerOptions;
+import com.google.javascript.jscomp.CompilerOptions.LanguageMode;
+
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * 编译配置（不可变），通过 builder() 创建
+ * 默认值与命令行工具一致；同一个配置可以同时供多个 CompileEngine 使用
+ */
+public final class CompileConfig {
+
+    private final CompilationLevel compilationLevel;
+    private final LanguageMode languageIn;
+    private final LanguageMode languageOut;
+    private final List<Path> externs;
+    private final boolean builtinExterns;
+    private final List<String> keywords;
+    private final long minFileSize;
+    private final boolean countLinesBefore;
+    private final boolean countLinesAfter;
+    private final int threads;
+    private final int scanThreads;
+    private final int ioThreads;
+    private final long readAheadBytes;
+    private final long heapBudgetBytes;
+    private final Path cacheDir;
+    private final long cacheMaxBytes;
+    private final boolean passTiming;
+    private final boolean dedup;
+    private final boolean hardLinks;
+    private final boolean sourceMap;
+    private final long timeoutMillis;
+    private final boolean timeoutFallback;
+    private final Executor executor;
+    private final OutputSink output;
+    private final PrintStream out;
+    private final PrintStream err;
+
+    private CompileConfig(Builder builder) {
+        this.compilationLevel = builder.compilationLevel;
+        this.languageIn = builder.languageIn;
+        this.languageOut = builder.languageOut;
+        this.externs = Collections.unmodifiableList(new ArrayList<>(builder.externs));
+        this.builtinExterns = builder.builtinExterns;
+        this.keywords = Collections.unmodifiableList(new ArrayList<>(builder.keywords));
+        this.minFileSize = builder.minFileSize;
+        this.countLinesBefore = builder.countLinesBefore;
+        this.countLinesAfter = builder.countLinesAfter;
+        this.threads = builder.threads;
+        this.scanThreads = builder.scanThreads;
+        this.ioThreads = builder.ioThreads;
+        this.readAheadBytes = builder.readAheadBytes;
+        this.heapBudgetBytes = builder.heapBudgetBytes;
+        this.cacheDir = builder.cacheDir;
+        this.cacheMaxBytes = builder.cacheMaxBytes;
+        this.passTiming = builder.passTiming;
+        this.dedup = builder.dedup;
+        this.hardLinks = builder.hardLinks;
+        this.sourceMap = builder.sourceMap;
+        this.timeoutMillis = builder.timeoutMillis;
+        this.timeoutFallback = builder.timeoutFallback;
+        this.executor = builder.executor;
+        this.output = builder.output != null ? builder.output : OutputSink.overwrite();
+        this.out = builder.out;
+        this.err = builder.err;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 以当前配置为初始值创建 Builder，用于派生出只有少数几项不同的配置
+     */
+    public Builder toBuilder() {
+        Builder builder = new Builder();
+        builder.compilationLevel = compilationLevel;
+        builder.languageIn = languageIn;
+        builder.languageOut = languageOut;
+        builder.externs = new ArrayList<>(externs);
+        builder.builtinExterns = builtinExterns;
+        builder.keywords = new ArrayList<>(keywords);
+        builder.minFileSize = minFileSize;
+        builder.countLinesBefore = countLinesBefore;
+        builder.countLinesAfter = countLinesAfter;
+        builder.threads = threads;
+        builder.scanThreads = scanThreads;
+        builder.ioThreads = ioThreads;
+        builder.readAheadBytes = readAheadBytes;
+        builder.heapBudgetBytes = heapBudgetBytes;
+        builder.cacheDir = cacheDir;
+        builder.cacheMaxBytes = cacheMaxBytes;
+        builder.passTiming = passTiming;
+        builder.dedup = dedup;
+        builder.hardLinks = hardLinks;
+        builder.sourceMap = sourceMap;
+        builder.timeoutMillis = timeoutMillis;
+        builder.timeoutFallback = timeoutFallback;
+        builder.executor = executor;
+        builder.output = output;
+        builder.out = out;
+        builder.err = err;
+        return builder;
+    }
+
+    /**
+     * 按配置创建编译选项
+     * Closure 编译时会改写传入的 CompilerOptions，且不支持复制，所以每个 Compiler 使用一个新实例
+     */
+    CompilerOptions newCompilerOptions(CompilationLevel level) {
+        CompilerOptions options = new CompilerOptions();
+        level.setOptionsForCompilationLevel(options);
+        options.setLanguageIn(languageIn);
+        options.setLanguageOut(languageOut);
+        return options;
+    }
+
+    public CompilationLevel compilationLevel() {
+        return compilationLevel;
+    }
+
+    public LanguageMode languageIn() {
+        return languageIn;
+    }
+
+    public LanguageMode languageOut() {
+        return languageOut;
+    }
+
+    public List<Path> externs() {
+        return externs;
+    }
+
+    public boolean builtinExterns() {
+        return builtinExterns;
+    }
+
+    public List<String> keywords() {
+        return keywords;
+    }
+
+    public long minFileSize() {
+        return minFileSize;
+    }
+
+    public boolean countLinesBefore() {
+        return countLinesBefore;
+    }
+
+    public boolean countLinesAfter() {
+        return countLinesAfter;
+    }
+
+    public int threads() {
+        return threads;
+    }
+
+    public int scanThreads() {
+        return scanThreads;
+    }
+
+    public int ioThreads() {
+        return ioThreads;
+    }
+
+    public long readAheadBytes() {
+        return readAheadBytes;
+    }
+
+    /**
+     * 同时编译的文件估算堆内存之和的上限，未设置时为最大堆内存的3/4
+     */
+    public long heapBudgetBytes() {
+        return heapBudgetBytes > 0 ? heapBudgetBytes : Runtime.getRuntime().maxMemory() / 4 * 3;
+    }
+
+    public Path cacheDir() {
+        return cacheDir;
+    }
+
+    public long cacheMaxBytes() {
+        return cacheMaxBytes;
+    }
+
+    public boolean passTiming() {
+        return passTiming;
+    }
+
+    public boolean dedup() {
+        return dedup;
+    }
+
+    public boolean hardLinks() {
+        return hardLinks;
+    }
+
+    public boolean sourceMap() {
+        return sourceMap;
+    }
+
+    public long timeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public boolean timeoutFallback() {
+        return timeoutFallback;
+    }
+
+    public Executor executor() {
+        return executor;
+    }
+
+    public OutputSink output() {
+        return output;
+    }
+
+    public PrintStream out() {
+        return out;
+    }
+
+    public PrintStream err() {
+        return err;
+    }
+
+    /**
+     * CompileConfig 的构建器（非线程安全）
+     */
+    public static final class Builder {
+        private CompilationLevel compilationLevel = CompilationLevel.SIMPLE_OPTIMIZATIONS;
+        private LanguageMode languageIn = LanguageMode.ECMASCRIPT_2020;
+        private LanguageMode languageOut = LanguageMode.ECMASCRIPT5;
+        private List<Path> externs = new ArrayList<>();
+        private boolean builtinExterns;
+        private List<String> keywords = new ArrayList<>();
+        private long minFileSize;
+        private boolean countLinesBefore;
+        private boolean countLinesAfter;
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private int scanThreads = 1;
+        private int ioThreads = 2;
+        private long readAheadBytes = 256L * 1024 * 1024;
+        private long heapBudgetBytes;
+        private Path cacheDir;
+        private long cacheMaxBytes = 512L * 1024 * 1024;
+        private boolean passTiming;
+        private boolean dedup;
+        private boolean hardLinks;
+        private boolean sourceMap;
+        private long timeoutMillis;
+        private boolean timeoutFallback;
+        private Executor executor;
+        private OutputSink output;
+        private PrintStream out;
+        private PrintStream err;
+
+        private Builder() {
+        }
+
+        /** 优化级别，默认: SIMPLE_OPTIMIZATIONS */
+        public Builder compilationLevel(CompilationLevel level) {
+            this.compilationLevel = requireNonNull(level, "compilationLevel");
+            return this;
+        }
+
+        /** 输入JS版本，默认: ECMASCRIPT_2020 */
+        public Builder languageIn(LanguageMode mode) {
+            this.languageIn = requireNonNull(mode, "languageIn");
+            return this;
+        }
+
+        /** 输出兼容版本，默认: ECMASCRIPT5 */
+        public Builder languageOut(LanguageMode mode) {
+            this.languageOut = requireNonNull(mode, "languageOut");
+            return this;
+        }
+
+        /**
+         * 编译使用的 externs，创建 CompileEngine 时读取一次，所有文件的编译共用
+         * @param builtin 是否包含 Closure 内置的浏览器 externs
+         * @param files externs 文件
+         */
+        public Builder externs(boolean builtin, List<Path> files) {
+            this.builtinExterns = builtin;
+            this.externs = new ArrayList<>(files);
+            return this;
+        }
+
+        /** scan 时的路径关键字过滤，路径包含任一关键字的文件才会处理，默认不过滤 */
+        public Builder keywords(String... keywords) {
+            this.keywords = new ArrayList<>(Arrays.asList(keywords));
+            return this;
+        }
+
+        /** scan 时的文件大小阈值（字节），超过该大小的文件才会处理，默认: 0（不过滤） */
+        public Builder minFileSize(long bytes) {
+            this.minFileSize = Math.max(0, bytes);
+            return this;
+        }
+
+        /** 统计压缩前/压缩后的代码行数（排除空行和注释），默认都不统计 */
+        public Builder countLines(boolean before, boolean after) {
+            this.countLinesBefore = before;
+            this.countLinesAfter = after;
+            return this;
+        }
+
+        /** 内置流水线的编译线程数，默认等于CPU核数 */
+        public Builder threads(int threads) {
+            this.threads = requirePositive(threads, "threads");
+            return this;
+        }
+
+        /** scan 时的目录遍历线程数，默认: 1（串行遍历） */
+        public Builder scanThreads(int threads) {
+            this.scanThreads = requirePositive(threads, "scanThreads");
+            return this;
+        }
+
+        /** 内置流水线中读取和写入文件的线程数（各自），默认: 2 */
+        public Builder ioThreads(int threads) {
+            this.ioThreads = requirePositive(threads, "ioThreads");
+            return this;
+        }
+
+        /** 已读入但尚未写出的源码大小上限（字节），默认: 256 MB */
+        public Builder readAheadBytes(long bytes) {
+            this.readAheadBytes = requirePositive(bytes, "readAheadBytes");
+            return this;
+        }
+
+        /** 同时编译的文件估算堆内存之和的上限（字节），默认: 最大堆内存的3/4 */
+        public Builder heapBudgetBytes(long bytes) {
+            this.heapBudgetBytes = requirePositive(bytes, "heapBudgetBytes");
+            return this;
+        }
+
+        /**
+         * 启用增量编译缓存
+         * @param dir 缓存目录，null 表示不启用
+         * @param maxBytes 缓存大小上限（字节），0 表示不限制
+         */
+        public Builder cache(Path dir, long maxBytes) {
+            this.cacheDir = dir;
+            this.cacheMaxBytes = Math.max(0, maxBytes);
+            return this;
+        }
+
+        /** 统计 Closure Compiler 各个 pass 的耗时（略微增加编译耗时，且不再统计编译阶段的内存分配） */
+        public Builder passTiming(boolean passTiming) {
+            this.passTiming = passTiming;
+            return this;
+        }
+
+        /**
+         * 同一批文件中内容相同的文件只编译一次
+         * @param hardLinks 输出位置为覆盖源文件时，是否在同一文件系统内以硬链接输出
+         */
+        public Builder dedup(boolean dedup, boolean hardLinks) {
+            this.dedup = dedup;
+            this.hardLinks = dedup && hardLinks;
+            return this;
+        }
+
+        /** 生成 Source Map（与重复文件检测不能同时启用） */
+        public Builder sourceMap(boolean sourceMap) {
+            this.sourceMap = sourceMap;
+            return this;
+        }
+
+        /**
+         * 单个文件的编译时间预算
+         * @param millis 毫秒，0 表示不限制
+         * @param fallback 超时后是否改用 WHITESPACE_ONLY 重新编译，否则该文件编译失败
+         */
+        public Builder timeout(long millis, boolean fallback) {
+            this.timeoutMillis = Math.max(0, millis);
+            this.timeoutFallback = fallback;
+            return this;
+        }
+
+        /**
+         * 执行编译的 Executor，每个文件作为一个任务（读取、编译、写入）提交
+         * 默认为 null：使用内置的 读取 → 编译 → 写入 流水线（按文件大小调度，受堆预算限制）
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /** 压缩结果的输出位置，默认: 覆盖源文件 */
+        public Builder output(OutputSink output) {
+            this.output = output;
+            return this;
+        }
+
+        /**
+         * 每个文件的处理过程输出（与命令行工具相同），默认不输出
+         * @param out 标准输出，null 表示不输出
+         * @param err 错误输出，null 表示不输出
+         */
+        public Builder log(PrintStream out, PrintStream err) {
+            this.out = out;
+            this.err = err;
+            return this;
+        }
+
+        /**
+         * @throws IllegalStateException 同时启用了 Source Map 和重复文件检测
+         */
+        public CompileConfig build() {
+            if (sourceMap && dedup) {
+                // 压缩结果末尾的 sourceMappingURL 注释和 Source Map 都含有文件名，内容相同的文件结果也不同
+                throw new IllegalStateException("生成 Source Map 时不能启用重复文件检测");
+            }
+            return new CompileConfig(this);
+        }
+
+        private static <T> T requireNonNull(T value, String name) {
+            if (value == null) {
+                throw new IllegalArgumentException(name + " 不能为 null");
+            }
+            return value;
+        }
+
+        private static int requirePositive(int value, String name) {
+            if (value <= 0) {
+                throw new IllegalArgumentException(name + " 必须大于 0: " + value);
+            }
+            return value;
+        }
+
+        private static long requirePositive(long value, String name) {
+            if (value <= 0) {
+                throw new IllegalArgumentException(name + " 必须大于 0: " + value);
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,480 @@
+package tech.flowerbirds;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 守护进程模式：JVM 常驻并监听本机端口，接收客户端发来的编译请求
+ * 省去每次启动 JVM、加载 Closure Compiler 和 JIT 预热的开销
+ *
+ * 通信协议（UTF-8 文本，每行一条）：
+ * 请求：协议标识、访问令牌、客户端工作目录、若干参数行，最后以空行结束
+ * 响应：以 "O " 开头的标准输出行、以 "E " 开头的错误输出行，最后一行 "X 退出码"
+ *
+ * 请求以守护进程用户的身份读写任意路径，因此只接受持有访问令牌的客户端：
+ * 启动时生成随机令牌，写入用户主目录下只有本用户可读写（0600）的 ~/.jscompiler/daemon-端口.token，
+ * 客户端从同一文件读取；其他本机用户读不到令牌，连接后会被拒绝
+ */
+final class CompileDaemon {
+
+    static final int DEFAULT_PORT = 17321;
+    static final int DEFAULT_QUEUE = 16;
+    private static final String PROTOCOL = "JSCOMPILER/2";
+    private static final String STOP = "-stop";
+    private static final int REQUEST_READ_TIMEOUT = 5_000; // 读取整个请求的时间上限（毫秒），超时关闭连接
+    private static final int READER_THREADS = 4;           // 读取请求的线程数
+    private static final int READER_QUEUE = 32;            // 等待读取的连接数上限
+
+    private static final int TOKEN_BYTES = 32;
+
+    private final ServerSocket serverSocket;
+    private final byte[] token;
+    private final ThreadPoolExecutor readers;          // 读取请求，完整读取后才交给 executor
+    private final ScheduledExecutorService readTimer;  // 读取超时后关闭连接
+    private final ThreadPoolExecutor executor;
+    private final CountDownLatch stopped = new CountDownLatch(1); // 已排队的请求完成、服务端口关闭后计数归零
+    private volatile boolean stopping = false;
+
+    private CompileDaemon(ServerSocket serverSocket, byte[] token, int queueSize) {
+        this.serverSocket = serverSocket;
+        this.token = token;
+        // 请求由读取线程读完后再排队，不完整或很慢的连接只占用一个读取线程，不会阻塞接收新连接
+        this.readers = new ThreadPoolExecutor(READER_THREADS, READER_THREADS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(READER_QUEUE), daemonThreads("js-compiler-daemon-reader"));
+        this.readTimer = Executors.newSingleThreadScheduledExecutor(daemonThreads("js-compiler-daemon-timer"));
+        // 配置保存在 JsCompiler 的静态字段中，请求只能逐个执行；超出队列长度的请求直接拒绝
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), daemonThreads("js-compiler-daemon"));
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * 启动守护进程并阻塞，直到收到停止请求或进程被终止
+     */
+    static void serve(String[] args) {
+        int port = DEFAULT_PORT;
+        int queueSize = DEFAULT_QUEUE;
+        for (String arg : args) {
+            if (arg.startsWith("-daemon=")) {
+                port = parseInt(arg.substring(8), DEFAULT_PORT, "端口");
+            } else if (arg.startsWith("-queue=")) {
+                queueSize = Math.max(1, parseInt(arg.substring(7), DEFAULT_QUEUE, "请求队列长度"));
+            }
+        }
+
+        CompileDaemon daemon;
+        try {
+            // 只监听回环地址，不接受其他机器的请求
+            daemon = new CompileDaemon(new ServerSocket(port, 50, InetAddress.getLoopbackAddress()), newToken(), queueSize);
+        } catch (IOException e) {
+            System.err.println("❌ 无法监听端口 " + port + "：" + e.getMessage());
+            return;
+        }
+        Path tokenFile = tokenFile(port);
+        try {
+            writeToken(tokenFile, daemon.token);
+        } catch (IOException e) {
+            System.err.println("❌ 无法写入访问令牌文件 " + tokenFile + "：" + e.getMessage());
+            closeQuietly(daemon.serverSocket);
+            return;
+        }
+
+        System.out.println("正在预热编译器...");
+        long start = System.currentTimeMillis();
+        JsCompiler.warmUp();
+        System.out.println("预热完成，耗时 " + (System.currentTimeMillis() - start) + " ms");
+
+        // 收到终止信号时同样等待已排队的请求完成，并删除令牌文件
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            daemon.stop();
+            daemon.awaitStopped();
+            deleteToken(tokenFile);
+        }, "js-compiler-daemon-shutdown"));
+        System.out.println("🚀 守护进程已启动，监听 127.0.0.1:" + port + "，请求队列长度: " + queueSize);
+        System.out.println("访问令牌: " + tokenFile);
+        daemon.acceptLoop();
+        deleteToken(tokenFile);
+        System.out.println("守护进程已停止");
+    }
+
+    private static void deleteToken(Path tokenFile) {
+        try {
+            Files.deleteIfExists(tokenFile);
+        } catch (IOException e) {
+            System.err.println("⚠️ 无法删除访问令牌文件 " + tokenFile + "：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 访问令牌文件：~/.jscompiler/daemon-端口.token
+     */
+    static Path tokenFile(int port) {
+        return Paths.get(System.getProperty("user.home"), ".jscompiler", "daemon-" + port + ".token");
+    }
+
+    private static byte[] newToken() {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder hex = new StringBuilder(TOKEN_BYTES * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * 写入令牌文件：目录 0700、文件 0600，创建时就设置权限，不存在其他用户可读的时间窗口
+     * 不支持 POSIX 权限的文件系统（Windows）上改用 File 的属主读写权限
+     */
+    private static void writeToken(Path file, byte[] token) throws IOException {
+        Path dir = file.getParent();
+        // 上次异常退出时残留的令牌文件直接删除重建，保证权限正确
+        Files.deleteIfExists(file);
+        boolean posix = dir.getFileSystem().supportedFileAttributeViews().contains("posix");
+        if (posix) {
+            try {
+                Files.createDirectory(dir, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            } catch (FileAlreadyExistsException e) {
+                // 目录已存在
+            }
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createDirectories(dir);
+            Files.createFile(file);
+            File f = file.toFile();
+            boolean restricted = f.setReadable(false, false) && f.setReadable(true, true)
+                    && f.setWritable(false, false) && f.setWritable(true, true);
+            if (!restricted) {
+                throw new IOException("无法限制令牌文件的访问权限");
+            }
+        }
+        Files.write(file, token);
+    }
+
+    /**
+     * 客户端读取令牌
+     */
+    private static String readToken(int port) throws IOException {
+        return new String(Files.readAllBytes(tokenFile(port)), StandardCharsets.US_ASCII).trim();
+    }
+
+    /**
+     * 接收连接，直到服务端口关闭：停止过程中仍然接收连接，以便告知客户端守护进程正在停止
+     */
+    private void acceptLoop() {
+        while (true) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                break; // 服务端口已关闭
+            } catch (IOException e) {
+                System.err.println("⚠️ 接收连接失败：" + e.getMessage());
+                continue;
+            }
+            try {
+                readers.execute(() -> handle(socket));
+            } catch (RejectedExecutionException e) {
+                System.err.println("⚠️ 等待读取的连接过多，已拒绝新连接");
+                closeQuietly(socket);
+            }
+        }
+        stop();
+        awaitStopped();
+    }
+
+    /**
+     * 在读取线程中读取一个请求，完整读取后放入队列
+     * 整个请求需在 REQUEST_READ_TIMEOUT 内读完，否则关闭连接（逐字节慢速发送也无法一直占用读取线程）
+     */
+    private void handle(Socket socket) {
+        ScheduledFuture<?> timeout = readTimer.schedule(() -> closeQuietly(socket), REQUEST_READ_TIMEOUT, TimeUnit.MILLISECONDS);
+        String workDir;
+        List<String> args = new ArrayList<>();
+        Writer writer;
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            if (!PROTOCOL.equals(reader.readLine())) {
+                timeout.cancel(false);
+                closeQuietly(socket);
+                return;
+            }
+            String clientToken = reader.readLine();
+            if (clientToken == null || !MessageDigest.isEqual(token, clientToken.getBytes(StandardCharsets.US_ASCII))) {
+                timeout.cancel(false);
+                System.err.println("⚠️ 拒绝未通过认证的请求");
+                reply(socket, writer, "E ❌ 访问令牌错误，请确认与守护进程使用同一用户运行", 1);
+                return;
+            }
+            workDir = reader.readLine();
+            if (workDir == null || workDir.isEmpty() || !isValidPath(workDir)) {
+                timeout.cancel(false);
+                System.err.println("⚠️ 拒绝缺少工作目录的请求");
+                reply(socket, writer, "E ❌ 请求格式错误：缺少或无法识别工作目录", 1);
+                return;
+            }
+            String line;
+            while ((line = reader.readLine()) != null && !line.isEmpty()) {
+                args.add(line);
+            }
+            if (!timeout.cancel(false)) {
+                throw new IOException("读取请求超时");
+            }
+        } catch (IOException e) {
+            timeout.cancel(false);
+            System.err.println("⚠️ 读取请求失败：" + e.getMessage());
+            closeQuietly(socket);
+            return;
+        }
+
+        if (args.contains(STOP)) {
+            // 立即答复，已排队的请求在后台执行完后再退出
+            int pending = executor.getActiveCount() + executor.getQueue().size();
+            if (!stopping) {
+                System.out.println("收到停止请求，等待 " + pending + " 个请求完成后停止...");
+                stop();
+            }
+            reply(socket, writer, "O 守护进程正在停止，还有 " + pending + " 个请求排队或正在执行", 0);
+            return;
+        }
+
+        try {
+            executor.execute(() -> runRequest(socket, writer, workDir, args));
+        } catch (RejectedExecutionException e) {
+            if (stopping) {
+                reply(socket, writer, "E ❌ 守护进程正在停止，不再接受新的请求", 2);
+            } else {
+                reply(socket, writer, "E ❌ 守护进程繁忙，请求队列已满（" + executor.getQueue().size() + "），请稍后重试", 2);
+            }
+        }
+    }
+
+    /**
+     * 执行一个编译请求，把输出实时转发给客户端
+     */
+    private void runRequest(Socket socket, Writer writer, String workDir, List<String> args) {
+        long start = System.currentTimeMillis();
+        System.out.println("📥 开始处理请求：" + String.join(" ", args) + "（工作目录: " + workDir + "）");
+        int exitCode;
+        try (PrintStream out = new PrintStream(new TaggedLineStream(writer, "O "), true, "UTF-8");
+             PrintStream err = new PrintStream(new TaggedLineStream(writer, "E "), true, "UTF-8")) {
+            exitCode = JsCompiler.runBatch(args.toArray(new String[0]), out, err, Paths.get(workDir));
+        } catch (UnsupportedEncodingException e) {
+            exitCode = 1;
+        }
+        reply(socket, writer, null, exitCode);
+        System.out.println("📤 请求处理完成，耗时 " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    private static boolean isValidPath(String path) {
+        try {
+            Paths.get(path);
+            return true;
+        } catch (InvalidPathException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 发送最后的响应行并关闭连接
+     */
+    private static void reply(Socket socket, Writer writer, String message, int exitCode) {
+        try {
+            synchronized (writer) {
+                if (message != null) {
+                    writer.write(message + "\n");
+                }
+                writer.write("X " + exitCode + "\n");
+                writer.flush();
+            }
+        } catch (IOException e) {
+            System.err.println("⚠️ 客户端连接已断开：" + e.getMessage());
+        } finally {
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * 停止接收新的编译请求，已排队的请求在后台线程中执行完毕后关闭服务端口（可重复调用，立即返回）
+     */
+    private synchronized void stop() {
+        if (stopping) {
+            return;
+        }
+        stopping = true;
+        executor.shutdown();
+        Thread drain = new Thread(this::drain, "js-compiler-daemon-drain");
+        drain.setDaemon(true);
+        drain.start();
+    }
+
+    private void drain() {
+        try {
+            while (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                System.out.println("仍有 " + (executor.getActiveCount() + executor.getQueue().size()) + " 个请求未完成，继续等待...");
+            }
+            closeQuietly(serverSocket);
+            // 正在读取的连接最多再占用 REQUEST_READ_TIMEOUT，读完后会收到"正在停止"的答复
+            readers.shutdown();
+            readers.awaitTermination(REQUEST_READ_TIMEOUT * 2L, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeQuietly(serverSocket);
+            readTimer.shutdownNow();
+            stopped.countDown();
+        }
+    }
+
+    /**
+     * 等待 stop 发起的停止过程结束
+     */
+    private void awaitStopped() {
+        try {
+            stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 客户端：把参数发送给守护进程，输出执行结果
+     * @return 守护进程返回的退出码
+     */
+    static int send(String[] args) {
+        int port = DEFAULT_PORT;
+        List<String> forwarded = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("-client=")) {
+                port = parseInt(arg.substring(8), DEFAULT_PORT, "端口");
+            } else if (!arg.equals("-client")) {
+                forwarded.add(arg);
+            }
+        }
+
+        String token;
+        try {
+            token = readToken(port);
+        } catch (IOException e) {
+            System.err.println("❌ 无法读取访问令牌 " + tokenFile(port) + "（" + e.getMessage() + "），请先使用 -daemon 启动");
+            return 1;
+        }
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            writer.write(PROTOCOL + "\n");
+            writer.write(token + "\n");
+            writer.write(new File("").getAbsolutePath() + "\n");
+            for (String arg : forwarded) {
+                writer.write(arg + "\n");
+            }
+            writer.write("\n");
+            writer.flush();
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("O ")) {
+                    System.out.println(line.substring(2));
+                } else if (line.startsWith("E ")) {
+                    System.err.println(line.substring(2));
+                } else if (line.startsWith("X ")) {
+                    return parseInt(line.substring(2), 1, "退出码");
+                }
+            }
+            System.err.println("❌ 守护进程意外断开连接");
+            return 1;
+        } catch (IOException e) {
+            System.err.println("❌ 无法连接到守护进程 127.0.0.1:" + port + "（" + e.getMessage() + "），请先使用 -daemon 启动");
+            return 1;
+        }
+    }
+
+    private static int parseInt(String value, int defaultValue, String name) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("⚠️ " + name + "格式错误，使用默认值" + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // 忽略关闭异常
+        }
+    }
+
+    /**
+     * 按行转发输出：每凑满一行就加上前缀写给客户端，标准输出和错误输出共用同一个连接
+     */
+    private static class TaggedLineStream extends OutputStream {
+        private final Writer writer;
+        private final String tag;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        TaggedLineStream(Writer writer, String tag) {
+            this.writer = writer;
+            this.tag = tag;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (b == '\n') {
+                emit();
+            } else if (b != '\r') {
+                line.write(b);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (line.size() > 0) {
+                emit();
+            }
+        }
+
+        private void emit() throws IOException {
+            String text = new String(line.toByteArray(), StandardCharsets.UTF_8);
+            line.reset();
+            synchronized (writer) {
+                writer.write(tag + text + "\n");
+                writer.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,993 @@
+package tech.flowerbirds;
+
+import com.google.javascript.jscomp.*;
+import com.google.javascript.jscomp.Compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 编译引擎：按 CompileConfig 编译 JS 文件，每个文件的结果通过 CompletableFuture 返回
+ * 配置和运行状态都保存在实例中，不依赖静态字段：配置不同的多个引擎可以在同一进程中同时运行，
+ * 同一个引擎也可以被多个线程同时调用 compileAsync
+ * 命令行工具（JsCompiler）只负责解析参数、发现文件和输出汇总，编译本身都由该类完成
+ *
+ * 用法：
+ * <pre>
+ * CompileEngine engine = new CompileEngine(CompileConfig.builder().output(OutputSink.inMemory()).build());
+ * List&lt;CompletableFuture&lt;CompileResult&gt;&gt; results = engine.compileAsync(engine.scan(Paths.get("src/main/resources")));
+ * </pre>
+ */
+public final class CompileEngine {
+
+    static final String IGNORE_DIR = "src/main/js/test"; // 排除的目录
+
+    // Closure Compiler 统计 pass 耗时时会把每个阶段的计时写入该日志，保留引用以免日志级别设置被回收
+    private static final java.util.logging.Logger TRACER_LOGGER =
+            java.util.logging.Logger.getLogger("com.google.javascript.jscomp.Tracer");
+
+    // 未指定日志输出时丢弃所有输出
+    private static final PrintStream DISCARD = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    });
+
+    private final CompileConfig config;
+    private final ExternsSet externs;  // 该引擎所有编译共用的 externs，只读取一次
+    private final CompileCache cache;  // 启用缓存时的缓存实例
+
+    /**
+     * 加载 externs，启用缓存时创建缓存目录
+     */
+    public CompileEngine(CompileConfig config) throws IOException {
+        this.config = config;
+        if (config.builtinExterns() || !config.externs().isEmpty()) {
+            try {
+                externs = ExternsSet.load(config.builtinExterns(), config.externs());
+            } catch (IOException e) {
+                throw new IOException("无法加载 externs：" + e, e);
+            }
+        } else {
+            externs = ExternsSet.empty();
+        }
+        // externs 参与缓存键计算，externs 变化同样会使缓存失效
+        cache = config.cacheDir() == null ? null : new CompileCache(config.cacheDir(), config.cacheMaxBytes(), cacheSettings());
+        if (config.passTiming()) {
+            TRACER_LOGGER.setLevel(java.util.logging.Level.WARNING);
+        }
+    }
+
+    public CompileConfig config() {
+        return config;
+    }
+
+    /**
+     * 扫描目录（递归）下的JS文件，排除 src/main/js/test 目录，并按配置的关键字和文件大小过滤
+     */
+    public List<Path> scan(Path root) throws IOException {
+        List<Path> files = Collections.synchronizedList(new ArrayList<>());
+        newScanner(null, err()).scan(root, file -> files.add(file.toPath()));
+        return new ArrayList<>(files);
+    }
+
+    /**
+     * 异步编译一批文件，立即返回，结果与 paths 的顺序一致
+     * 编译失败不会使 future 异常结束（见 CompileResult.errors），只有 OutOfMemoryError 等严重错误才会
+     * 未指定 executor 时使用内置的 读取 → 编译 → 写入 流水线（按堆预算调度），线程在这批文件处理完后退出
+     */
+    public List<CompletableFuture<CompileResult>> compileAsync(Collection<Path> paths) {
+        Batch batch = newBatch(null);
+        List<CompletableFuture<CompileResult>> results = new ArrayList<>(paths.size());
+        try {
+            for (Path path : paths) {
+                results.add(batch.submit(path.toFile()));
+            }
+        } finally {
+            batch.close();
+        }
+        return results;
+    }
+
+    ExternsSet externs() {
+        return externs;
+    }
+
+    CompileCache cache() {
+        return cache;
+    }
+
+    /**
+     * 按配置的过滤条件创建扫描器
+     * @param manifest 输出清单，扫描时跳过其中未被改动的压缩文件，为 null 时不跳过
+     */
+    JsFileScanner newScanner(OutputManifest manifest, PrintStream err) {
+        return new JsFileScanner(IGNORE_DIR, KeywordMatcher.of(config.keywords().toArray(new String[0])),
+                config.minFileSize(), manifest, config.scanThreads(), err);
+    }
+
+    /**
+     * 开始一批文件的编译（同一批文件共用一个流水线和重复文件索引）
+     * @param listener 压缩结果写入磁盘后的回调，可以为 null
+     */
+    Batch newBatch(WriteListener listener) {
+        return new Batch(listener, null);
+    }
+
+    /**
+     * 开始一批文件的编译，各文件的控制台输出在 gate 打开之前暂存
+     */
+    Batch newBatch(WriteListener listener, FileLog.Gate gate) {
+        return new Batch(listener, gate);
+    }
+
+    /**
+     * 编译单个文件并写入输出，在当前线程中依次执行各个阶段（编译由 Closure 转交给它自己的编译线程）
+     */
+    CompileResult compile(File srcFile, FileLog log) {
+        return new Batch(null, null).compileNow(new CompilePipeline.Job(srcFile, log), false);
+    }
+
+    /**
+     * 压缩结果写入磁盘后的回调（命令行工具用于记录输出清单、生成预压缩文件）
+     */
+    interface WriteListener {
+        void written(Path target, String code, byte[] bytes) throws IOException;
+    }
+
+    static String formatMillis(long millis) {
+        return millis % 1000 == 0 ? millis / 1000 + " 秒" : millis + " 毫秒";
+    }
+
+    private PrintStream err() {
+        return config.err() != null ? config.err() : DISCARD;
+    }
+
+    private FileLog newLog(FileLog.Gate gate) {
+        return new FileLog(config.out() != null ? config.out() : DISCARD, err(), gate);
+    }
+
+    /**
+     * 参与缓存键计算的编译配置，任何一项变化都会使已有缓存失效
+     */
+    private String cacheSettings() {
+        return "closure=" + CompileCache.closureVersion()
+                + ";level=" + config.compilationLevel()
+                + ";in=" + config.languageIn()
+                + ";out=" + config.languageOut()
+                + ";externs=" + externs.fingerprint()
+                + (config.sourceMap() ? ";sourcemap" : "");
+    }
+
+    /**
+     * 一批文件的编译：每个文件依次经过 读取 → 编译 → 写入，该文件的全部控制台输出在处理结束后一次性打印
+     */
+    final class Batch implements CompilePipeline.Stages {
+        private final DuplicateIndex duplicates; // 启用重复文件检测时这批文件的索引
+        private final WriteListener listener;
+        private final FileLog.Gate gate;         // 控制台闸门，为 null 时每个文件处理完立即打印
+        private CompilePipeline pipeline;        // 第一个文件提交时创建
+
+        private Batch(WriteListener listener, FileLog.Gate gate) {
+            this.duplicates = config.dedup() ? new DuplicateIndex() : null;
+            this.listener = listener;
+            this.gate = gate;
+        }
+
+        /**
+         * 提交一个文件，立即返回
+         * 指定了 executor 时每个文件作为一个任务交给它执行（不经过流水线的堆预算调度，
+         * 内容相同的文件也可能同时编译），否则提交到流水线
+         */
+        CompletableFuture<CompileResult> submit(File srcFile) {
+            Executor executor = config.executor();
+            if (executor == null) {
+                return pipeline().submit(srcFile, newLog(gate));
+            }
+            CompilePipeline.Job job = new CompilePipeline.Job(srcFile, newLog(gate));
+            try {
+                executor.execute(() -> {
+                    try {
+                        CompileResult result = compileNow(job, false);
+                        job.log.flush();
+                        job.result.complete(result);
+                    } catch (Throwable t) {
+                        job.log.flush();
+                        job.result.completeExceptionally(t);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                job.result.completeExceptionally(e);
+            }
+            return job.result;
+        }
+
+        private synchronized CompilePipeline pipeline() {
+            if (pipeline == null) {
+                pipeline = new CompilePipeline(this, config.ioThreads(), config.threads(),
+                        config.readAheadBytes(), config.heapBudgetBytes());
+            }
+            return pipeline;
+        }
+
+        /**
+         * 不再提交新文件，已提交的文件继续处理
+         */
+        synchronized void close() {
+            if (pipeline != null) {
+                pipeline.close();
+            }
+        }
+
+        /**
+         * 等待已提交到流水线的文件处理完毕（调用前先 close）
+         */
+        void awaitTermination() throws InterruptedException {
+            CompilePipeline current;
+            synchronized (this) {
+                current = pipeline;
+            }
+            if (current != null) {
+                current.awaitTermination();
+            }
+        }
+
+        /**
+         * 重复文件索引，未启用重复文件检测时为 null
+         */
+        DuplicateIndex duplicates() {
+            return duplicates;
+        }
+
+        /**
+         * 分组合并编译：同一组的文件交给同一个 Compiler（compileChunks），每个文件作为一个 chunk，
+         * 依次依赖组内前一个文件（与页面中按顺序加载脚本一致），编译后每个文件仍各自写回
+         * 同组文件共用一次 Compiler 初始化和 externs 处理，Closure 也能看到组内文件之间的引用；
+         * 不生成公共 chunk：每个文件原地覆盖，没有额外的输出文件可以存放提取出的公共代码
+         * 合并编译失败时整组改为逐个文件编译，出错的文件不影响同组的其他文件
+         * @return 各个文件的结果，按分组顺序及组内顺序（跳过空分组）
+         */
+        List<CompletableFuture<CompileResult>> submitGroups(Map<String, List<File>> groups) {
+            List<CompletableFuture<CompileResult>> results = new ArrayList<>();
+            List<String> names = new ArrayList<>();
+            List<List<CompilePipeline.Job>> batches = new ArrayList<>();
+            for (Map.Entry<String, List<File>> group : groups.entrySet()) {
+                if (group.getValue().isEmpty()) {
+                    continue;
+                }
+                List<CompilePipeline.Job> jobs = new ArrayList<>();
+                for (File file : group.getValue()) {
+                    CompilePipeline.Job job = new CompilePipeline.Job(file, newLog(gate));
+                    jobs.add(job);
+                    results.add(job.result);
+                }
+                names.add(group.getKey());
+                batches.add(jobs);
+            }
+            // 与流水线相同：源码总量大的组先编译，编译线程使用同样大小的栈
+            List<Integer> order = new ArrayList<>();
+            for (int i = 0; i < batches.size(); i++) {
+                order.add(i);
+            }
+            order.sort(Comparator.comparingLong((Integer i) -> batches.get(i).stream().mapToLong(job -> job.size).sum()).reversed());
+            Executor executor = config.executor();
+            ExecutorService pool = null;
+            if (executor == null) {
+                AtomicInteger index = new AtomicInteger();
+                pool = Executors.newFixedThreadPool(config.threads(), runnable -> {
+                    Thread thread = new Thread(null, runnable, "js-chunk-compiler-" + index.incrementAndGet(), CompilePipeline.COMPILER_STACK_SIZE);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                executor = pool;
+            }
+            boolean inCurrentThread = pool != null;
+            try {
+                for (int i : order) {
+                    String name = names.get(i);
+                    List<CompilePipeline.Job> jobs = batches.get(i);
+                    try {
+                        executor.execute(() -> compileGroup(name, jobs, inCurrentThread));
+                    } catch (RejectedExecutionException e) {
+                        jobs.forEach(job -> job.result.completeExceptionally(e));
+                    }
+                }
+            } finally {
+                if (pool != null) {
+                    pool.shutdown();
+                }
+            }
+            return results;
+        }
+
+        @Override
+        public void read(CompilePipeline.Job job) throws IOException {
+            readSource(job);
+        }
+
+        @Override
+        public void compile(CompilePipeline.Job job) throws IOException {
+            compileSource(job, true);
+        }
+
+        @Override
+        public void write(CompilePipeline.Job job) throws IOException {
+            writeOutput(job);
+        }
+
+        @Override
+        public CompileResult finish(CompilePipeline.Job job) {
+            return printLineCount(job.log, finishJob(job));
+        }
+
+        @Override
+        public CompileResult fail(CompilePipeline.Job job, Exception e) {
+            return printLineCount(job.log, failJob(job, e));
+        }
+
+        /**
+         * 在当前线程中依次执行读取、编译、写入
+         * @param inCurrentThread 是否直接在当前线程中编译，见 compileSource
+         */
+        private CompileResult compileNow(CompilePipeline.Job job, boolean inCurrentThread) {
+            CompileResult result;
+            try {
+                readSource(job);
+                compileSource(job, inCurrentThread);
+                if (job.output != null) {
+                    writeOutput(job);
+                }
+                result = finishJob(job);
+            } catch (Exception e) {
+                result = failJob(job, e);
+            }
+            job.source = null;
+            job.output = null;
+            return printLineCount(job.log, result);
+        }
+
+        /**
+         * 读取、合并编译并写回一组文件，每个文件单独生成结果
+         * @param inCurrentThread 是否直接在当前线程中编译（内置线程池的线程有足够大的栈）
+         */
+        private void compileGroup(String name, List<CompilePipeline.Job> jobs, boolean inCurrentThread) {
+            try {
+                List<CompilePipeline.Job> compiled = new ArrayList<>();
+                for (CompilePipeline.Job job : jobs) {
+                    try {
+                        readSource(job);
+                        if (config.countLinesBefore()) {
+                            job.beforeCount = LineCounter.count(job.source);
+                        }
+                        compiled.add(job);
+                    } catch (IOException e) {
+                        settleJob(job, failJob(job, e));
+                    }
+                }
+                if (!compiled.isEmpty()) {
+                    FileLog log = compiled.get(0).log;
+                    log.out("📦 合并编译分组 " + name + "：" + compiled.size() + " 个文件");
+                    long deadline = deadline();
+                    if (!compileChunks(compiled, config.compilationLevel(), inCurrentThread, deadline)) {
+                        // 合并编译出错：逐个文件编译，只有出错的文件保持不变
+                        log.err("⚠️ 分组 " + name + " 合并编译失败，改为逐个文件编译");
+                        for (CompilePipeline.Job job : compiled) {
+                            job.stats.errorCount = 0;
+                            compileSource(job, inCurrentThread);
+                        }
+                    }
+                    boolean timedOut = compiled.get(0).stats.timedOut;
+                    if (timedOut && config.timeoutFallback()) {
+                        // 超时后整组改用最快的 WHITESPACE_ONLY 重新编译（同样受时间预算限制）
+                        log.err("⏱️ 编译超时（超过 " + formatMillis(config.timeoutMillis()) + "），整组改用 WHITESPACE_ONLY 在剩余时间内重新编译");
+                        compiled.forEach(job -> job.stats.timedOut = false);
+                        compileChunks(compiled, CompilationLevel.WHITESPACE_ONLY, inCurrentThread, deadline);
+                        compiled.forEach(job -> job.stats.fallback = job.output != null);
+                    }
+                }
+                for (CompilePipeline.Job job : compiled) {
+                    CompileResult result;
+                    try {
+                        if (job.stats.timedOut) {
+                            job.log.err("⏱️ 编译超时（超过 " + formatMillis(config.timeoutMillis()) + "）：" + job.file.getPath() + "，源文件保持不变");
+                            job.errors.add("编译超时（超过 " + formatMillis(config.timeoutMillis()) + "）");
+                        }
+                        if (job.output != null) {
+                            writeOutput(job);
+                        }
+                        result = finishJob(job);
+                    } catch (Exception e) {
+                        result = failJob(job, e);
+                    }
+                    settleJob(job, result);
+                }
+            } catch (Throwable t) {
+                // OutOfMemoryError 等严重错误交给调用方处理（已完成的文件不受影响）
+                for (CompilePipeline.Job job : jobs) {
+                    job.log.flush();
+                    job.result.completeExceptionally(t);
+                }
+            }
+        }
+
+        private void settleJob(CompilePipeline.Job job, CompileResult result) {
+            printLineCount(job.log, result);
+            job.source = null;
+            job.output = null;
+            job.log.flush();
+            job.result.complete(result);
+        }
+
+        /**
+         * 用一个 Compiler 编译一组文件，成功时为每个文件填充 job.output
+         * 编译耗时和内存分配按源码大小分摊到各个文件
+         * @return 编译出错时返回 false（错误已打印在组内第一个文件的输出中）；成功或超时返回 true
+         */
+        private boolean compileChunks(List<CompilePipeline.Job> jobs, CompilationLevel level, boolean inCurrentThread,
+                                      long deadline) throws IOException {
+            List<JSChunk> chunks = new ArrayList<>();
+            JSChunk previous = null;
+            long totalBytes = 0;
+            for (int i = 0; i < jobs.size(); i++) {
+                CompilePipeline.Job job = jobs.get(i);
+                JSChunk chunk = new JSChunk("chunk" + i);
+                chunk.add(SourceFile.fromCode(job.file.getAbsolutePath(), new String(job.source, StandardCharsets.UTF_8)));
+                if (previous != null) {
+                    chunk.addDependency(previous);
+                }
+                chunks.add(chunk);
+                previous = chunk;
+                totalBytes += job.source.length;
+            }
+
+            CompilerOptions options = config.newCompilerOptions(level);
+            if (config.sourceMap()) {
+                List<File> files = new ArrayList<>();
+                jobs.forEach(job -> files.add(job.file));
+                SourceMaps.configure(options, files);
+            }
+            // 按目录分组时无法得知页面中的实际加载顺序，引用组内后加载文件中的定义只作为警告
+            options.setWarningLevel(DiagnosticGroups.VIOLATED_MODULE_DEP, CheckLevel.WARNING);
+            // Closure 的错误和警告打印在组内第一个文件的输出中
+            FileLog log = jobs.get(0).log;
+            Compiler compiler = newCompiler(log, deadline);
+            if (inCurrentThread) {
+                compiler.disableThreads();
+            }
+            long allocated = CompileReport.threadAllocatedBytes();
+            long start = System.nanoTime();
+            try {
+                Result result;
+                try {
+                    result = compiler.compileChunks(externs.newSourceFiles(), chunks, options);
+                } finally {
+                    long nanos = System.nanoTime() - start;
+                    long bytes = allocated >= 0 ? CompileReport.threadAllocatedBytes() - allocated : -1;
+                    for (CompilePipeline.Job job : jobs) {
+                        double share = totalBytes > 0 ? (double) job.source.length / totalBytes : 1.0 / jobs.size();
+                        job.stats.compileNanos += (long) (nanos * share);
+                        if (job.stats.allocatedBytes >= 0 && bytes >= 0) {
+                            job.stats.allocatedBytes += (long) (bytes * share);
+                        }
+                    }
+                }
+
+                if (!result.success) {
+                    for (CompilePipeline.Job job : jobs) {
+                        job.output = null;
+                    }
+                    return false;
+                }
+                for (int i = 0; i < jobs.size(); i++) {
+                    CompilePipeline.Job job = jobs.get(i);
+                    long serializeStart = System.nanoTime();
+                    if (config.sourceMap()) {
+                        // 每个文件单独一份 Source Map，只包含该文件所在分块的映射
+                        compiler.resetAndIntitializeSourceMap();
+                    }
+                    job.output = compiler.toSource(chunks.get(i));
+                    if (config.sourceMap() && !job.output.isEmpty() && writeSourceMap(job, compiler, false)) {
+                        job.output += SourceMaps.comment(job.file);
+                    }
+                    job.stats.serializeNanos += System.nanoTime() - serializeStart;
+                }
+                return true;
+            } catch (RuntimeException e) {
+                if (!DeadlineCompiler.isTimeout(e)) {
+                    throw e;
+                }
+                // 放弃整组的编译，Compiler 及其 AST 随之被回收
+                for (CompilePipeline.Job job : jobs) {
+                    job.stats.timedOut = true;
+                    job.output = null;
+                }
+                return true;
+            }
+        }
+
+        /**
+         * 按配置输出单个文件的行数统计（不管编译是否成功）
+         */
+        private CompileResult printLineCount(FileLog log, CompileResult result) {
+            if (config.countLinesBefore() && config.countLinesAfter()) {
+                log.out("  📊 压缩前: " + result.linesBefore() + " 行，压缩后: " + result.linesAfter() + " 行");
+            } else if (config.countLinesBefore()) {
+                log.out("  📊 压缩前代码行数: " + result.linesBefore());
+            } else if (config.countLinesAfter()) {
+                log.out("  📊 代码行数: " + result.linesAfter());
+            }
+            return result;
+        }
+
+        /**
+         * 读取阶段：读入源文件内容
+         */
+        private void readSource(CompilePipeline.Job job) throws IOException {
+            job.log.out("正在处理：" + job.file);
+            long allocated = CompileReport.threadAllocatedBytes();
+            long start = System.nanoTime();
+            try {
+                job.source = Files.readAllBytes(job.file.toPath());
+                job.stats.inputBytes = job.source.length;
+                if (duplicates != null) {
+                    job.contentHash = DuplicateIndex.hash(job.source);
+                }
+            } finally {
+                job.stats.readNanos = System.nanoTime() - start;
+                job.stats.addAllocated(allocated);
+            }
+        }
+
+        /**
+         * 编译阶段：启用缓存时先按内容哈希查找已有的压缩结果，未命中再调用 Closure Compiler
+         * @param inCurrentThread 是否直接在当前线程中编译（当前线程需有足够大的栈，见 CompilePipeline.COMPILER_STACK_SIZE），
+         *                        否则由 Closure 转交给它自己的编译线程执行
+         */
+        private void compileSource(CompilePipeline.Job job, boolean inCurrentThread) throws IOException {
+            long allocated = CompileReport.threadAllocatedBytes();
+            try {
+                compileOrLoadCached(job, inCurrentThread);
+            } finally {
+                job.stats.addAllocated(allocated);
+            }
+        }
+
+        private void compileOrLoadCached(CompilePipeline.Job job, boolean inCurrentThread) throws IOException {
+            File srcFile = job.file;
+            FileLog log = job.log;
+            CompileReport.FileStats stats = job.stats;
+            byte[] sourceBytes = job.source;
+            // 如果需要统计压缩前的行数，直接统计已读入的内容，不再重复读取文件
+            if (config.countLinesBefore()) {
+                job.beforeCount = LineCounter.count(sourceBytes);
+            }
+            // 与前面已编译的文件内容相同时直接复用其结果
+            if (duplicates != null && reuseDuplicate(job)) {
+                return;
+            }
+            // 生成 Source Map 时压缩结果和 Source Map 中含有文件名，文件名参与计算缓存键
+            String cacheKey = cache != null ? cache.key(sourceBytes, config.sourceMap() ? srcFile.getName() : null) : null;
+            String compiledCode = null;
+            if (cacheKey != null && config.sourceMap()) {
+                Path source = srcFile.toPath();
+                Writer map = config.output().openSourceMap(source);
+                if (map == null) {
+                    // 输出位置不支持 Source Map 时压缩结果中没有 sourceMappingURL 注释，与缓存的结果不同
+                    cacheKey = null;
+                } else {
+                    try (Writer writer = map) {
+                        compiledCode = cache.get(cacheKey, writer);
+                    }
+                    if (compiledCode == null) {
+                        config.output().discardSourceMap(source);
+                    } else {
+                        job.sourceMapOpen = true;
+                    }
+                }
+            } else if (cacheKey != null) {
+                compiledCode = cache.get(cacheKey);
+            }
+
+            if (compiledCode != null) {
+                stats.cached = true;
+                log.out("♻️ 命中编译缓存：" + srcFile.getPath());
+            } else {
+                try {
+                    long deadline = deadline();
+                    compiledCode = compileWithClosure(job, inCurrentThread, config.compilationLevel(), cacheKey != null, deadline);
+                    if (stats.timedOut && config.timeoutFallback()) {
+                        // 超时后改用最快的 WHITESPACE_ONLY 重新编译，只能使用同一时间预算中剩余的时间
+                        log.err("⏱️ 编译超时（超过 " + formatMillis(config.timeoutMillis()) + "）：" + srcFile.getPath() + "，改用 WHITESPACE_ONLY 在剩余时间内重新编译");
+                        stats.timedOut = false;
+                        compiledCode = compileWithClosure(job, inCurrentThread, CompilationLevel.WHITESPACE_ONLY, false, deadline);
+                        stats.fallback = compiledCode != null;
+                    }
+                    if (stats.timedOut) {
+                        log.err("⏱️ 编译超时（超过 " + formatMillis(config.timeoutMillis()) + "）：" + srcFile.getPath() + "，源文件保持不变");
+                        job.errors.add("编译超时（超过 " + formatMillis(config.timeoutMillis()) + "）");
+                    }
+                    // 空结果不写入缓存，下次仍重新编译；降级编译的结果也不写入缓存
+                    if (cacheKey != null && compiledCode != null && !compiledCode.isEmpty() && !stats.fallback) {
+                        try {
+                            cache.put(cacheKey, compiledCode, job.cachedMap);
+                        } catch (IOException e) {
+                            // 缓存只是加速手段，写入失败时照常输出本次的编译结果
+                            log.err("⚠️ 写入缓存失败：" + srcFile.getPath() + "，原因：" + e.getMessage());
+                        }
+                    }
+                } finally {
+                    deleteCachedMap(job);
+                }
+            }
+            job.output = compiledCode;
+            if (duplicates != null) {
+                duplicates.compiled(job.contentHash, srcFile, compiledCode, stats.errorCount, stats.timedOut);
+            }
+        }
+
+        /**
+         * 调用 Closure Compiler 编译，启用超时时超出时间预算即放弃本次编译（stats.timedOut 置为 true）
+         * @param forCache 生成 Source Map 时是否同时保留一份副本，供保存到缓存
+         * @param deadline 截止时间（System.nanoTime），见 deadline()
+         * @return 压缩结果，编译失败或超时时返回 null
+         */
+        private String compileWithClosure(CompilePipeline.Job job, boolean inCurrentThread, CompilationLevel level,
+                                          boolean forCache, long deadline) throws IOException {
+            File srcFile = job.file;
+            FileLog log = job.log;
+            CompileReport.FileStats stats = job.stats;
+            SourceFile inputFile = SourceFile.fromCode(srcFile.getAbsolutePath(),
+                    new String(job.source, StandardCharsets.UTF_8));
+
+            // 配置编译选项
+            CompilerOptions options = config.newCompilerOptions(level);
+            if (config.sourceMap()) {
+                SourceMaps.configure(options, Collections.singletonList(srcFile));
+            }
+
+            Path tracerOutput = null;
+            if (config.passTiming()) {
+                options.setTracerMode(CompilerOptions.TracerMode.TIMING_ONLY);
+                // Closure 的文字版计时报告写入临时文件，不混入控制台输出；各 pass 耗时直接从 tracker 读取
+                tracerOutput = Files.createTempFile("jscompiler-trace-", ".txt");
+                options.setTracerOutput(tracerOutput);
+            }
+
+            // 执行编译（externs 为该引擎共用的同一组 SourceFile）
+            Compiler compiler = newCompiler(log, deadline);
+            if (config.passTiming()) {
+                // Closure 只在它自己的编译线程中记录 pass 耗时，此时无法按线程统计编译阶段的内存分配
+                stats.allocatedBytes = -1;
+            } else if (inCurrentThread) {
+                compiler.disableThreads();
+            }
+            try {
+                Result result;
+                long start = System.nanoTime();
+                try {
+                    result = compiler.compile(
+                            externs.newSourceFiles(),
+                            Collections.singletonList(inputFile),
+                            options
+                    );
+                } finally {
+                    stats.compileNanos += System.nanoTime() - start;
+                    if (tracerOutput != null) {
+                        Files.deleteIfExists(tracerOutput);
+                    }
+                }
+                stats.errorCount = result.errors.size();
+                if (compiler.tracker != null) {
+                    Map<String, PerformanceTracker.Stats> passes = compiler.tracker.getStats();
+                    PerformanceTracker.Stats parse = passes.get("parseInputs");
+                    if (parse != null) {
+                        stats.parseMillis = parse.runtime;
+                    }
+                    stats.passes = passes;
+                }
+
+                // 校验编译结果
+                if (!result.success) {
+                    log.err("❌ 编译失败：" + srcFile.getPath());
+                    compiler.getErrors().forEach(err -> {
+                        log.err("   → " + err);
+                        job.errors.add(err.toString());
+                    });
+                    return null;
+                }
+                start = System.nanoTime();
+                String compiledCode = compiler.toSource();
+                if (config.sourceMap() && !compiledCode.isEmpty() && writeSourceMap(job, compiler, forCache)) {
+                    compiledCode += SourceMaps.comment(srcFile);
+                }
+                stats.serializeNanos += System.nanoTime() - start;
+                return compiledCode;
+            } catch (RuntimeException e) {
+                if (!DeadlineCompiler.isTimeout(e)) {
+                    throw e;
+                }
+                // 放弃本次编译，Compiler 及其 AST 随之被回收
+                stats.timedOut = true;
+                return null;
+            }
+        }
+
+        /**
+         * 从现在开始计算的单个文件（或分组）的截止时间，超时后的降级编译沿用同一截止时间
+         * @return System.nanoTime 时间，未启用超时时返回 0
+         */
+        private long deadline() {
+            long timeout = config.timeoutMillis();
+            return timeout > 0 ? System.nanoTime() + timeout * 1_000_000 : 0;
+        }
+
+        private Compiler newCompiler(FileLog log, long deadline) {
+            long timeout = config.timeoutMillis();
+            return timeout > 0 ? new DeadlineCompiler(log.compilerStream(), timeout, deadline) : new Compiler(log.compilerStream());
+        }
+
+        /**
+         * 把 toSource 刚记录的映射流式写入输出位置（替换之前编译写出的映射）
+         * Compiler 保留的映射引用着 AST 节点，在编译阶段写出后 Compiler 即可回收
+         * @param forCache 是否同时写入临时文件，供保存到缓存
+         * @return 输出位置是否支持 Source Map
+         */
+        private boolean writeSourceMap(CompilePipeline.Job job, Compiler compiler, boolean forCache) throws IOException {
+            Writer output = config.output().openSourceMap(job.file.toPath());
+            if (output == null) {
+                return false;
+            }
+            job.sourceMapOpen = true;
+            Writer copy = null;
+            try {
+                if (forCache) {
+                    deleteCachedMap(job);
+                    job.cachedMap = Files.createTempFile("jscompiler-map-", ".tmp");
+                    copy = Files.newBufferedWriter(job.cachedMap, StandardCharsets.UTF_8);
+                }
+                compiler.getSourceMap().appendTo(copy == null ? output : new TeeWriter(output, copy), job.file.getName());
+            } finally {
+                try {
+                    output.close();
+                } finally {
+                    if (copy != null) {
+                        copy.close();
+                    }
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 丢弃未随压缩结果生效的 Source Map
+         */
+        private void discardSourceMap(CompilePipeline.Job job) {
+            if (job.sourceMapOpen) {
+                job.sourceMapOpen = false;
+                try {
+                    config.output().discardSourceMap(job.file.toPath());
+                } catch (IOException e) {
+                    job.log.err("⚠️ 丢弃 Source Map 失败：" + job.file.getPath() + "，原因：" + e.getMessage());
+                }
+            }
+            deleteCachedMap(job);
+        }
+
+        private void deleteCachedMap(CompilePipeline.Job job) {
+            if (job.cachedMap != null) {
+                try {
+                    Files.deleteIfExists(job.cachedMap);
+                } catch (IOException e) {
+                    job.log.err("⚠️ 删除临时文件失败：" + job.cachedMap + "，原因：" + e.getMessage());
+                }
+                job.cachedMap = null;
+            }
+        }
+
+        /**
+         * 查找内容相同且已编译过的文件，复用其编译结果（流水线保证两者不会同时编译）
+         * @return 是否已复用；之前的结果已不可用（例如输出文件已被改动）时返回 false，照常编译
+         */
+        private boolean reuseDuplicate(CompilePipeline.Job job) throws IOException {
+            DuplicateIndex.Original original = duplicates.find(job.contentHash);
+            if (original == null) {
+                return false;
+            }
+            if (original.failed) {
+                job.log.err((original.timedOut ? "⏱️ 编译超时：" : "❌ 编译失败：") + job.file.getPath() + "（与 " + original.file.getPath() + " 内容相同）");
+                job.errors.add((original.timedOut ? "编译超时" : "编译失败") + "（与 " + original.file.getPath() + " 内容相同）");
+                job.stats.errorCount = original.errorCount;
+                job.stats.timedOut = original.timedOut;
+                job.output = null;
+                duplicates.reused();
+                return true;
+            }
+            String output = original.output();
+            if (output == null) {
+                return false;
+            }
+            job.log.out("♊ 与 " + original.file.getPath() + " 内容相同，复用编译结果");
+            job.output = output;
+            duplicates.reused();
+            return true;
+        }
+
+        /**
+         * 写入阶段：把编译结果交给输出位置（默认先写入源文件同目录下的临时文件，再原子替换源文件）
+         */
+        private void writeOutput(CompilePipeline.Job job) throws IOException {
+            long allocated = CompileReport.threadAllocatedBytes();
+            long start = System.nanoTime();
+            try {
+                writeResult(job);
+            } finally {
+                job.stats.writeNanos = System.nanoTime() - start;
+                job.stats.addAllocated(allocated);
+            }
+        }
+
+        private void writeResult(CompilePipeline.Job job) throws IOException {
+            File srcFile = job.file;
+            FileLog log = job.log;
+            byte[] bytes = job.output.getBytes(StandardCharsets.UTF_8);
+            // 验证编译结果非空（避免空文件覆盖源文件）
+            if (bytes.length == 0) {
+                log.err("❌ 编译结果为空：" + srcFile.getPath());
+                job.errors.add("编译结果为空");
+                return;
+            }
+
+            Path source = srcFile.toPath();
+            OutputSink output = config.output();
+            Path linkTarget = null;
+            if (config.hardLinks() && duplicates != null && output instanceof FileOutput) {
+                // 写入时再查找：内容相同的文件通常刚刚写入完毕
+                DuplicateIndex.Original original = duplicates.find(job.contentHash);
+                linkTarget = original != null && !original.file.equals(srcFile) ? original.writtenFile() : null;
+            }
+            Path target;
+            try {
+                if (linkTarget != null && ((FileOutput) output).link(source, linkTarget)) {
+                    target = source;
+                } else {
+                    linkTarget = null;
+                    target = output.write(source, bytes);
+                }
+            } catch (AccessDeniedException e) {
+                log.err("❌ 源文件被占用，无法覆盖：" + srcFile.getPath());
+                job.errors.add("源文件被占用，无法覆盖");
+                return;
+            } catch (IOException e) {
+                log.err("❌ 写入失败：" + srcFile.getPath() + "，原因：" + e.getMessage());
+                job.errors.add("写入失败：" + e.getMessage());
+                return;
+            }
+
+            // Source Map 随压缩结果一起生效
+            boolean sourceMap = job.sourceMapOpen;
+            job.sourceMapOpen = false;
+            job.written = true;
+            job.stats.outputBytes = bytes.length;
+            if (target == null) {
+                log.out("✅ 编译完成：" + srcFile.getPath());
+                return;
+            }
+            log.out("✅ 成功覆盖：" + srcFile.getPath() + (linkTarget != null ? "（硬链接到 " + linkTarget + "）" : ""));
+            if (sourceMap) {
+                log.out("🗺️ 生成 Source Map：" + SourceMaps.mapFile(target));
+            }
+            if (duplicates != null) {
+                if (linkTarget != null) {
+                    duplicates.linked();
+                }
+                // 内容相同的文件之后可以从该文件读取结果，释放内存中的编译结果
+                duplicates.written(job.contentHash, srcFile, target);
+            }
+            if (listener != null) {
+                listener.written(target, job.output, bytes);
+            }
+        }
+
+        /**
+         * 生成结果：无论编译是否成功，如果需要统计压缩后的行数，都进行统计
+         * 编译成功时统计写入的压缩结果，失败时源文件未被改动，统计已读入的原内容
+         */
+        private CompileResult finishJob(CompilePipeline.Job job) {
+            discardSourceMap(job);
+            long afterLineCount = 0;
+            if (config.countLinesAfter()) {
+                afterLineCount = job.written ? LineCounter.count(job.output) : LineCounter.count(job.source);
+            }
+            job.stats.success = job.written;
+            return new CompileResult(job.file.toPath(), job.stats, job.errors, job.beforeCount, afterLineCount);
+        }
+
+        /**
+         * 处理过程中出现异常时生成结果，尽量给出行数统计
+         */
+        private CompileResult failJob(CompilePipeline.Job job, Exception e) {
+            File srcFile = job.file;
+            FileLog log = job.log;
+            log.err("❌ 处理文件失败：" + srcFile.getPath() + "，原因：" + e.getMessage());
+            log.printStackTrace(e);
+            job.errors.add(e.toString());
+            discardSourceMap(job);
+
+            long beforeLineCount = job.beforeCount;
+            long afterLineCount = 0;
+            // 即使发生异常，如果需要统计行数，也尽量进行统计
+            try {
+                if (config.countLinesBefore() && beforeLineCount == 0) {
+                    beforeLineCount = job.source != null ? LineCounter.count(job.source) : LineCounter.count(srcFile.toPath());
+                }
+                if (config.countLinesAfter()) {
+                    afterLineCount = LineCounter.count(srcFile.toPath());
+                }
+            } catch (Exception ex) {
+                log.err("⚠️ 统计行数时出错：" + ex.getMessage());
+            }
+            job.stats.success = false;
+            job.stats.errorCount = Math.max(1, job.stats.errorCount);
+            return new CompileResult(srcFile.toPath(), job.stats, job.errors, beforeLineCount, afterLineCount);
+        }
+    }
+
+    /**
+     * 同时写入两个输出：Source Map 写入输出位置的同时保留一份副本供保存到缓存
+     */
+    private static final class TeeWriter extends Writer {
+        private final Writer first;
+        private final Writer second;
+
+        TeeWriter(Writer first, Writer second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            first.write(buffer, offset, length);
+            second.write(buffer, offset, length);
+        }
+
+        @Override
+        public void write(String text, int offset, int length) throws IOException {
+            first.write(text, offset, length);
+            second.write(text, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            first.flush();
+            second.flush();
+        }
+
+        @Override
+        public void close() {
+            // 两个输出由调用方分别关闭
+        }
+    }
+}
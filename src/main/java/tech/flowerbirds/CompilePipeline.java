@@ -0,0 +1,382 @@
+package tech.flowerbirds;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 读取 → 编译 → 写入 三段流水线
+ * 各阶段使用独立线程，通过有界队列衔接：编译线程工作时，读取线程预读后续文件、写入线程落盘前面的结果
+ * 预读的源码字节受内存预算限制，超出预算时读取线程阻塞，超大文件较多时内存占用仍然有上限
+ *
+ * 调度按文件大小进行：
+ * - 大文件优先读取和编译，避免最后只剩一个超大文件在单核上编译，拖长总耗时
+ * - 按源码大小估算编译所需的堆内存，同时编译的文件估算总和不超过堆预算；
+ *   放不下当前最大的文件时由较小的文件填补空档，单个文件超出预算时单独编译
+ * - 内容相同（contentHash 相同）的文件不会同时编译：后面的文件等前一个编译完再取出，直接复用其结果
+ */
+final class CompilePipeline {
+
+    /**
+     * 单个文件在流水线中的处理状态
+     */
+    static final class Job {
+        final File file;
+        final FileLog log;
+        final CompletableFuture<CompileResult> result = new CompletableFuture<>();
+        final long size;     // 提交时的文件大小，用于调度
+        final long sequence; // 提交顺序，大小相同时先提交的先处理
+        final long heapCost; // 估算的编译堆内存
+        byte[] source;       // 读取阶段填充
+        String output;       // 编译阶段填充，编译失败时为 null
+        long beforeCount;    // 压缩前代码行数
+        boolean written;     // 写入阶段是否已成功写入输出
+        int permits;         // 占用的内存预算（KB）
+        String contentHash;  // 源码内容哈希，启用重复检测时由读取阶段填充
+        boolean sourceMapOpen; // 编译阶段已向输出写出 Source Map，尚未随压缩结果生效
+        Path cachedMap;      // 启用缓存时 Source Map 的临时副本，保存到缓存后删除
+        final List<String> errors = new ArrayList<>(); // 编译错误和处理失败的原因
+        final CompileReport.FileStats stats; // 各阶段耗时等统计数据
+
+        Job(File file, FileLog log) {
+            this(file, log, file == null ? -1 : file.length(), 0);
+        }
+
+        Job(File file, FileLog log, long size, long sequence) {
+            this.file = file;
+            this.log = log;
+            this.size = size;
+            this.sequence = sequence;
+            this.heapCost = estimateHeap(size);
+            this.stats = file == null ? null : new CompileReport.FileStats(file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * 各阶段的具体处理逻辑
+     */
+    interface Stages {
+        /** 读取源文件，填充 job.source */
+        void read(Job job) throws Exception;
+
+        /** 编译，成功时填充 job.output */
+        void compile(Job job) throws Exception;
+
+        /** 把编译结果写入输出 */
+        void write(Job job) throws Exception;
+
+        /** 处理结束（无论成功失败），生成结果 */
+        CompileResult finish(Job job) throws Exception;
+
+        /** 任一阶段抛出异常时生成结果 */
+        CompileResult fail(Job job, Exception e);
+    }
+
+    private static final Job END = new Job(null, null, -1, Long.MAX_VALUE); // 阶段结束标记，排在所有文件之后
+
+    /**
+     * 编译所需堆内存的估算：每个 Compiler 的固定开销，加上与源码大小成正比的 AST 等数据
+     * （例如 785 KB 的 echarts.js 编译时堆占用峰值约 90 MB）
+     */
+    static final long HEAP_BASE_BYTES = 8L * 1024 * 1024;
+    static final long HEAP_BYTES_PER_SOURCE_BYTE = 128;
+
+    /**
+     * 编译线程的栈大小，与 Closure Compiler 自带编译线程相同（深层嵌套的代码需要较大的栈）
+     * 编译直接在编译线程中执行，不再转交给 Closure 的线程，便于按线程统计内存分配
+     */
+    static final long COMPILER_STACK_SIZE = 64L * 1024 * 1024;
+
+    private final Stages stages;
+    // 大文件优先读取
+    private final BlockingQueue<Job> readQueue = new PriorityBlockingQueue<>(64,
+            Comparator.comparingLong((Job job) -> job.size).reversed().thenComparingLong(job -> job.sequence));
+    private final CompileScheduler compileQueue;
+    private final BlockingQueue<Job> writeQueue;
+    private final Semaphore memory;
+    private final int memoryPermits;
+    private final int ioThreads;
+    private final int compileThreads;
+    private final AtomicInteger activeReaders;
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicInteger activeCompilers;
+    private final List<Thread> threads = new ArrayList<>();
+
+    /**
+     * @param ioThreads 读取线程数和写入线程数
+     * @param compileThreads 编译线程数
+     * @param readAheadBytes 已读入但尚未写出的源码字节上限
+     * @param heapBudgetBytes 同时编译的文件估算堆内存之和的上限
+     */
+    CompilePipeline(Stages stages, int ioThreads, int compileThreads, long readAheadBytes, long heapBudgetBytes) {
+        this.stages = stages;
+        this.ioThreads = Math.max(1, ioThreads);
+        this.compileThreads = Math.max(1, compileThreads);
+        this.compileQueue = new CompileScheduler(heapBudgetBytes);
+        this.writeQueue = new ArrayBlockingQueue<>(this.compileThreads);
+        this.memoryPermits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, readAheadBytes / 1024));
+        this.memory = new Semaphore(memoryPermits);
+        this.activeReaders = new AtomicInteger(this.ioThreads);
+        this.activeCompilers = new AtomicInteger(this.compileThreads);
+
+        for (int i = 1; i <= this.ioThreads; i++) {
+            start("js-reader-" + i, this::readLoop, 0);
+            start("js-writer-" + i, this::writeLoop, 0);
+        }
+        for (int i = 1; i <= this.compileThreads; i++) {
+            start("js-compiler-" + i, this::compileLoop, COMPILER_STACK_SIZE);
+        }
+    }
+
+    /**
+     * 提交一个文件，立即返回
+     */
+    CompletableFuture<CompileResult> submit(File file, FileLog log) {
+        Job job = new Job(file, log, file.length(), submitted.getAndIncrement());
+        readQueue.add(job);
+        return job.result;
+    }
+
+    /**
+     * 不再提交新文件，已提交的文件继续处理
+     */
+    void close() {
+        for (int i = 0; i < ioThreads; i++) {
+            readQueue.add(END);
+        }
+    }
+
+    /**
+     * 等待所有阶段处理完毕
+     */
+    void awaitTermination() throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private void start(String name, Runnable loop, long stackSize) {
+        Thread thread = new Thread(null, loop, name, stackSize);
+        thread.setDaemon(true);
+        threads.add(thread);
+        thread.start();
+    }
+
+    private void readLoop() {
+        try {
+            Job job;
+            while ((job = readQueue.take()) != END) {
+                // 超大文件最多占满全部预算，此时只有它单独处于预读状态
+                long kb = (job.size + 1023) / 1024;
+                job.permits = (int) Math.max(1, Math.min(memoryPermits, kb));
+                memory.acquire(job.permits);
+                if (run(job, Stage.READ)) {
+                    compileQueue.add(job);
+                }
+            }
+            if (activeReaders.decrementAndGet() == 0) {
+                compileQueue.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void compileLoop() {
+        try {
+            Job job;
+            while ((job = compileQueue.take()) != null) {
+                boolean compiled;
+                try {
+                    compiled = run(job, Stage.COMPILE);
+                } finally {
+                    compileQueue.done(job);
+                }
+                if (compiled) {
+                    if (job.output != null) {
+                        writeQueue.put(job);
+                    } else {
+                        complete(job);
+                    }
+                }
+            }
+            if (activeCompilers.decrementAndGet() == 0) {
+                for (int i = 0; i < ioThreads; i++) {
+                    writeQueue.put(END);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            Job job;
+            while ((job = writeQueue.take()) != END) {
+                if (run(job, Stage.WRITE)) {
+                    complete(job);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 按源码大小估算编译所需的堆内存
+     */
+    static long estimateHeap(long sourceBytes) {
+        return HEAP_BASE_BYTES + Math.max(0, sourceBytes) * HEAP_BYTES_PER_SOURCE_BYTE;
+    }
+
+    /**
+     * 已读入、等待编译的文件
+     * 编译线程每次取出估算内存放得进剩余堆预算的最大文件；没有文件在编译时，即使超出预算也取出最大的文件单独编译
+     * 与正在编译的文件内容相同的文件暂不取出，等其编译完毕后再取出
+     */
+    private static final class CompileScheduler {
+        private final List<Job> ready = new ArrayList<>();
+        private final Set<String> compiling = new HashSet<>(); // 正在编译的文件的内容哈希
+        private long available;   // 剩余堆预算
+        private int running;      // 正在编译的文件数
+        private boolean closed;   // 读取阶段已结束，不会再有新文件
+
+        CompileScheduler(long heapBudgetBytes) {
+            this.available = heapBudgetBytes;
+        }
+
+        synchronized void add(Job job) {
+            ready.add(job);
+            notifyAll();
+        }
+
+        synchronized void close() {
+            closed = true;
+            notifyAll();
+        }
+
+        /**
+         * @return 下一个要编译的文件，全部文件都已取出时返回 null
+         */
+        synchronized Job take() throws InterruptedException {
+            while (true) {
+                Job best = null;
+                for (Job job : ready) {
+                    if ((job.heapCost <= available || running == 0) && (best == null || isBefore(job, best))
+                            && (job.contentHash == null || !compiling.contains(job.contentHash))) {
+                        best = job;
+                    }
+                }
+                if (best != null) {
+                    ready.remove(best);
+                    available -= best.heapCost;
+                    running++;
+                    if (best.contentHash != null) {
+                        compiling.add(best.contentHash);
+                    }
+                    return best;
+                }
+                if (closed && ready.isEmpty()) {
+                    notifyAll(); // 唤醒其他编译线程一起退出
+                    return null;
+                }
+                wait();
+            }
+        }
+
+        /**
+         * 编译结束，归还该文件占用的堆预算
+         */
+        synchronized void done(Job job) {
+            available += job.heapCost;
+            running--;
+            if (job.contentHash != null) {
+                compiling.remove(job.contentHash);
+            }
+            notifyAll();
+        }
+
+        private static boolean isBefore(Job a, Job b) {
+            return a.size != b.size ? a.size > b.size : a.sequence < b.sequence;
+        }
+    }
+
+    private enum Stage { READ, COMPILE, WRITE }
+
+    /**
+     * 执行一个阶段；出错时直接结束该文件
+     * @return 是否可以进入下一阶段
+     */
+    private boolean run(Job job, Stage stage) {
+        try {
+            switch (stage) {
+                case READ:
+                    stages.read(job);
+                    break;
+                case COMPILE:
+                    stages.compile(job);
+                    break;
+                default:
+                    stages.write(job);
+            }
+            return true;
+        } catch (Exception e) {
+            settle(job, () -> stages.fail(job, e));
+        } catch (Throwable t) {
+            // OutOfMemoryError 等严重错误交给调用方处理
+            release(job);
+            job.result.completeExceptionally(t);
+        }
+        return false;
+    }
+
+    private void complete(Job job) {
+        settle(job, () -> stages.finish(job));
+    }
+
+    private interface ResultSupplier {
+        CompileResult get() throws Exception;
+    }
+
+    /**
+     * 生成结果并结束该文件：先打印该文件的输出再完成 future，保证汇总信息总在所有文件输出之后
+     */
+    private void settle(Job job, ResultSupplier supplier) {
+        CompileResult result = null;
+        Throwable error = null;
+        try {
+            result = supplier.get();
+        } catch (Throwable t) {
+            error = t;
+        }
+        release(job);
+        if (error == null) {
+            job.result.complete(result);
+        } else {
+            job.result.completeExceptionally(error);
+        }
+    }
+
+    /**
+     * 释放该文件占用的内存预算和缓冲内容，并打印其输出
+     */
+    private void release(Job job) {
+        memory.release(job.permits);
+        job.permits = 0;
+        job.source = null;
+        job.output = null;
+        job.log.flush();
+    }
+}
@@ -0,0 +1,324 @@
+package tech.flowerbirds;
+
+import com.google.javascript.jscomp.PerformanceTracker;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 编译性能报告
+ * 记录每个文件各阶段（读取、编译、生成代码、写入）的耗时、输入输出大小、内存分配量和编译结果，
+ * 汇总 p50 / p95 / max 以及最慢的文件，并输出为 JSON 或 CSV（按报告文件扩展名选择）
+ */
+final class CompileReport {
+
+    /**
+     * 单个文件的统计数据，由流水线各阶段填充
+     */
+    static final class FileStats {
+        final String path;
+        long inputBytes;          // 源码字节数
+        long outputBytes;         // 写入的压缩结果字节数
+        long readNanos;           // 读取耗时
+        long compileNanos;        // 解析和优化耗时（Compiler.compile）
+        long serializeNanos;      // 生成代码耗时（toSource）
+        long writeNanos;          // 写入耗时
+        long parseMillis = -1;    // 其中解析耗时（毫秒），仅启用 -passTiming 时可用
+        long allocatedBytes;      // 处理该文件时分配的堆内存，无法统计时为 -1
+        boolean cached;           // 是否命中编译缓存
+        boolean timedOut;         // 是否超出编译时间预算而放弃编译
+        boolean fallback;         // 是否在超时后改用 WHITESPACE_ONLY 编译
+        boolean success;
+        int errorCount;
+        Map<String, PerformanceTracker.Stats> passes; // Closure 各个 pass 的耗时，仅启用 -passTiming 时可用
+
+        FileStats(String path) {
+            this.path = path;
+            this.allocatedBytes = ALLOCATION_SUPPORTED ? 0 : -1;
+        }
+
+        long totalNanos() {
+            return readNanos + compileNanos + serializeNanos + writeNanos;
+        }
+
+        /**
+         * 当前统计数据的副本（生成编译结果时使用，之后流水线对原对象的修改不影响结果）
+         */
+        FileStats copy() {
+            FileStats copy = new FileStats(path);
+            copy.inputBytes = inputBytes;
+            copy.outputBytes = outputBytes;
+            copy.readNanos = readNanos;
+            copy.compileNanos = compileNanos;
+            copy.serializeNanos = serializeNanos;
+            copy.writeNanos = writeNanos;
+            copy.parseMillis = parseMillis;
+            copy.allocatedBytes = allocatedBytes;
+            copy.cached = cached;
+            copy.timedOut = timedOut;
+            copy.fallback = fallback;
+            copy.success = success;
+            copy.errorCount = errorCount;
+            copy.passes = passes == null ? null : Collections.unmodifiableMap(new LinkedHashMap<>(passes));
+            return copy;
+        }
+
+        /**
+         * 累加当前线程自 start 以来分配的内存
+         * @param start 阶段开始时 threadAllocatedBytes() 的返回值
+         */
+        void addAllocated(long start) {
+            if (allocatedBytes >= 0 && start >= 0) {
+                allocatedBytes += threadAllocatedBytes() - start;
+            }
+        }
+    }
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean ALLOCATION_SUPPORTED = initAllocationTracking();
+
+    private final List<FileStats> files = new ArrayList<>();
+    private final Map<String, long[]> passes = new HashMap<>(); // Closure 各个 pass 的累计耗时（毫秒）和执行次数
+
+    /**
+     * 当前线程累计分配的堆内存字节数，JVM 不支持时返回 -1
+     */
+    static long threadAllocatedBytes() {
+        if (!ALLOCATION_SUPPORTED) {
+            return -1;
+        }
+        return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static boolean initAllocationTracking() {
+        try {
+            if (THREADS instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) THREADS;
+                if (bean.isThreadAllocatedMemorySupported()) {
+                    bean.setThreadAllocatedMemoryEnabled(true);
+                    return true;
+                }
+            }
+        } catch (LinkageError | UnsupportedOperationException e) {
+            // 非 HotSpot 系 JVM，不统计内存分配
+        }
+        return false;
+    }
+
+    /**
+     * 按文件发现顺序添加统计数据
+     */
+    synchronized void add(FileStats stats) {
+        files.add(stats);
+    }
+
+    /**
+     * 累加一次编译中 Closure 各个 pass 的耗时
+     */
+    synchronized void addPasses(Map<String, PerformanceTracker.Stats> stats) {
+        for (PerformanceTracker.Stats pass : stats.values()) {
+            long[] total = passes.computeIfAbsent(pass.pass, k -> new long[2]);
+            total[0] += pass.runtime;
+            total[1] += pass.runs;
+        }
+    }
+
+    /**
+     * 在控制台输出各阶段耗时分布和最慢的文件
+     * @param top 列出最慢文件的个数
+     */
+    synchronized void printSummary(PrintStream out, int top) {
+        if (files.isEmpty()) {
+            return;
+        }
+        out.println("⏱️ 单文件耗时（毫秒）       p50       p95       max");
+        out.println(summaryLine("  读取        ", column(s -> s.readNanos)));
+        out.println(summaryLine("  编译        ", column(s -> s.compileNanos)));
+        out.println(summaryLine("  生成代码    ", column(s -> s.serializeNanos)));
+        out.println(summaryLine("  写入        ", column(s -> s.writeNanos)));
+        out.println(summaryLine("  合计        ", column(FileStats::totalNanos)));
+
+        List<FileStats> slowest = slowest(top);
+        out.println("🐢 最慢的 " + slowest.size() + " 个文件:");
+        for (FileStats stats : slowest) {
+            out.println(String.format("  %10.1f ms  %s", stats.totalNanos() / 1e6, stats.path));
+        }
+    }
+
+    /**
+     * 写入报告文件，扩展名为 .csv 时输出 CSV（每个文件一行），否则输出 JSON（含汇总）
+     */
+    synchronized void write(Path file, int top) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            if (file.getFileName().toString().toLowerCase().endsWith(".csv")) {
+                writeCsv(writer);
+            } else {
+                writeJson(writer, top);
+            }
+        }
+    }
+
+    private void writeCsv(Writer writer) throws IOException {
+        writer.write("path,success,errors,cached,timedOut,fallback,inputBytes,outputBytes,readMs,compileMs,parseMs,serializeMs,writeMs,totalMs,allocatedBytes\n");
+        for (FileStats s : files) {
+            writer.write(csv(s.path) + "," + s.success + "," + s.errorCount + "," + s.cached + ","
+                    + s.timedOut + "," + s.fallback + ","
+                    + s.inputBytes + "," + s.outputBytes + ","
+                    + millis(s.readNanos) + "," + millis(s.compileNanos) + "," + s.parseMillis + ","
+                    + millis(s.serializeNanos) + "," + millis(s.writeNanos) + "," + millis(s.totalNanos()) + ","
+                    + s.allocatedBytes + "\n");
+        }
+    }
+
+    private void writeJson(Writer writer, int top) throws IOException {
+        long success = files.stream().filter(s -> s.success).count();
+        writer.write("{\n");
+        writer.write("  \"summary\": {\n");
+        writer.write("    \"files\": " + files.size() + ",\n");
+        writer.write("    \"success\": " + success + ",\n");
+        writer.write("    \"failed\": " + (files.size() - success) + ",\n");
+        writer.write("    \"cached\": " + files.stream().filter(s -> s.cached).count() + ",\n");
+        writer.write("    \"timedOut\": " + files.stream().filter(s -> s.timedOut).count() + ",\n");
+        writer.write("    \"fallback\": " + files.stream().filter(s -> s.fallback).count() + ",\n");
+        writer.write("    \"inputBytes\": " + files.stream().mapToLong(s -> s.inputBytes).sum() + ",\n");
+        writer.write("    \"outputBytes\": " + files.stream().mapToLong(s -> s.outputBytes).sum() + ",\n");
+        // 只汇总统计了内存分配的文件，全部不可用时为 -1
+        boolean hasAllocation = files.stream().anyMatch(s -> s.allocatedBytes >= 0);
+        writer.write("    \"allocatedBytes\": " + (hasAllocation ? files.stream().filter(s -> s.allocatedBytes >= 0).mapToLong(s -> s.allocatedBytes).sum() : -1) + ",\n");
+        writer.write("    \"readMs\": " + percentilesJson(column(s -> s.readNanos)) + ",\n");
+        writer.write("    \"compileMs\": " + percentilesJson(column(s -> s.compileNanos)) + ",\n");
+        writer.write("    \"serializeMs\": " + percentilesJson(column(s -> s.serializeNanos)) + ",\n");
+        writer.write("    \"writeMs\": " + percentilesJson(column(s -> s.writeNanos)) + ",\n");
+        writer.write("    \"totalMs\": " + percentilesJson(column(FileStats::totalNanos)) + "\n");
+        writer.write("  },\n");
+
+        writer.write("  \"slowest\": [");
+        List<FileStats> slowest = slowest(top);
+        for (int i = 0; i < slowest.size(); i++) {
+            writer.write((i == 0 ? "\n" : ",\n") + "    {\"path\": " + json(slowest.get(i).path)
+                    + ", \"totalMs\": " + millis(slowest.get(i).totalNanos()) + "}");
+        }
+        writer.write(slowest.isEmpty() ? "],\n" : "\n  ],\n");
+
+        writer.write("  \"passes\": [");
+        List<Map.Entry<String, long[]>> passList = new ArrayList<>(passes.entrySet());
+        passList.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+        for (int i = 0; i < passList.size(); i++) {
+            Map.Entry<String, long[]> pass = passList.get(i);
+            writer.write((i == 0 ? "\n" : ",\n") + "    {\"name\": " + json(pass.getKey())
+                    + ", \"ms\": " + pass.getValue()[0] + ", \"runs\": " + pass.getValue()[1] + "}");
+        }
+        writer.write(passList.isEmpty() ? "],\n" : "\n  ],\n");
+
+        writer.write("  \"files\": [");
+        for (int i = 0; i < files.size(); i++) {
+            FileStats s = files.get(i);
+            writer.write((i == 0 ? "\n" : ",\n") + "    {\"path\": " + json(s.path)
+                    + ", \"success\": " + s.success
+                    + ", \"errors\": " + s.errorCount
+                    + ", \"cached\": " + s.cached
+                    + ", \"timedOut\": " + s.timedOut
+                    + ", \"fallback\": " + s.fallback
+                    + ", \"inputBytes\": " + s.inputBytes
+                    + ", \"outputBytes\": " + s.outputBytes
+                    + ", \"readMs\": " + millis(s.readNanos)
+                    + ", \"compileMs\": " + millis(s.compileNanos)
+                    + ", \"parseMs\": " + s.parseMillis
+                    + ", \"serializeMs\": " + millis(s.serializeNanos)
+                    + ", \"writeMs\": " + millis(s.writeNanos)
+                    + ", \"totalMs\": " + millis(s.totalNanos())
+                    + ", \"allocatedBytes\": " + s.allocatedBytes + "}");
+        }
+        writer.write(files.isEmpty() ? "]\n" : "\n  ]\n");
+        writer.write("}\n");
+    }
+
+    private interface Metric {
+        long of(FileStats stats);
+    }
+
+    /**
+     * 取出所有文件的某项耗时并排序
+     */
+    private long[] column(Metric metric) {
+        long[] values = new long[files.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = metric.of(files.get(i));
+        }
+        Arrays.sort(values);
+        return values;
+    }
+
+    /**
+     * 最近秩法计算百分位数
+     */
+    private static long percentile(long[] sorted, int p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static String summaryLine(String label, long[] sorted) {
+        return String.format("%s%10.1f%10.1f%10.1f", label,
+                percentile(sorted, 50) / 1e6, percentile(sorted, 95) / 1e6, percentile(sorted, 100) / 1e6);
+    }
+
+    private static String percentilesJson(long[] sorted) {
+        return "{\"p50\": " + millis(percentile(sorted, 50))
+                + ", \"p95\": " + millis(percentile(sorted, 95))
+                + ", \"max\": " + millis(percentile(sorted, 100)) + "}";
+    }
+
+    private List<FileStats> slowest(int top) {
+        List<FileStats> sorted = new ArrayList<>(files);
+        sorted.sort(Comparator.comparingLong(FileStats::totalNanos).reversed());
+        return sorted.subList(0, Math.min(Math.max(0, top), sorted.size()));
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    private static String csv(String text) {
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0) {
+            return text;
+        }
+        return "\"" + text.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String json(String text) {
+        StringBuilder sb = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
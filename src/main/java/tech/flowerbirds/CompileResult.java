@@ -0,0 +1,137 @@
+package tech.flowerbirds;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 单个文件的编译结果（不可变）
+ * 无论编译是否成功都会生成；编译失败时源文件（或输出位置）保持不变，errors 中是失败原因
+ * 生成时复制流水线中的统计数据，之后流水线的修改不会反映到结果中
+ */
+public final class CompileResult {
+
+    private final Path path;
+    private final List<String> errors;
+    private final long linesBefore;
+    private final long linesAfter;
+    private final boolean success;
+    private final boolean cached;
+    private final boolean timedOut;
+    private final boolean fallback;
+    private final long inputBytes;
+    private final long outputBytes;
+    private final long readNanos;
+    private final long compileNanos;
+    private final long serializeNanos;
+    private final long writeNanos;
+    private final long allocatedBytes;
+    final CompileReport.FileStats stats; // 统计数据的副本（命令行的性能报告使用，不对外公开）
+
+    CompileResult(Path path, CompileReport.FileStats stats, List<String> errors, long linesBefore, long linesAfter) {
+        this.path = path;
+        this.stats = stats.copy();
+        this.errors = Collections.unmodifiableList(new ArrayList<>(errors));
+        this.linesBefore = linesBefore;
+        this.linesAfter = linesAfter;
+        this.success = stats.success;
+        this.cached = stats.cached;
+        this.timedOut = stats.timedOut;
+        this.fallback = stats.fallback;
+        this.inputBytes = stats.inputBytes;
+        this.outputBytes = stats.outputBytes;
+        this.readNanos = stats.readNanos;
+        this.compileNanos = stats.compileNanos;
+        this.serializeNanos = stats.serializeNanos;
+        this.writeNanos = stats.writeNanos;
+        this.allocatedBytes = stats.allocatedBytes;
+    }
+
+    /** 源文件 */
+    public Path path() {
+        return path;
+    }
+
+    /** 压缩结果是否已写入输出 */
+    public boolean success() {
+        return success;
+    }
+
+    /** 编译错误和处理失败的原因，成功时为空 */
+    public List<String> errors() {
+        return errors;
+    }
+
+    /** 是否命中编译缓存 */
+    public boolean cached() {
+        return cached;
+    }
+
+    /** 是否超出编译时间预算而放弃编译 */
+    public boolean timedOut() {
+        return timedOut;
+    }
+
+    /** 是否在超时后改用 WHITESPACE_ONLY 编译 */
+    public boolean fallback() {
+        return fallback;
+    }
+
+    /** 源码字节数 */
+    public long inputBytes() {
+        return inputBytes;
+    }
+
+    /** 写入的压缩结果字节数，未写入时为 0 */
+    public long outputBytes() {
+        return outputBytes;
+    }
+
+    /** 压缩前代码行数，未启用统计时为 0 */
+    public long linesBefore() {
+        return linesBefore;
+    }
+
+    /** 压缩后代码行数（编译失败时为原文件行数），未启用统计时为 0 */
+    public long linesAfter() {
+        return linesAfter;
+    }
+
+    /** 读取耗时（纳秒） */
+    public long readNanos() {
+        return readNanos;
+    }
+
+    /** 解析和优化耗时（纳秒） */
+    public long compileNanos() {
+        return compileNanos;
+    }
+
+    /** 生成代码耗时（纳秒，包含生成 Source Map） */
+    public long serializeNanos() {
+        return serializeNanos;
+    }
+
+    /** 写入耗时（纳秒） */
+    public long writeNanos() {
+        return writeNanos;
+    }
+
+    /** 总耗时（纳秒） */
+    public long totalNanos() {
+        return readNanos + compileNanos + serializeNanos + writeNanos;
+    }
+
+    /** 处理该文件时分配的堆内存，无法统计时为 -1 */
+    public long allocatedBytes() {
+        return allocatedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return path + (success() ? " ok" : timedOut() ? " timeout" : " failed")
+                + " " + inputBytes() + " -> " + outputBytes() + " bytes, " + totalNanos() / 1_000_000 + " ms"
+                + (errors.isEmpty() ? "" : ", errors=" + errors);
+    }
+}
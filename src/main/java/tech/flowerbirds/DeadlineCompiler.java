@@ -0,0 +1,100 @@
+package tech.flowerbirds;
+
+import com.google.javascript.jscomp.Compiler;
+import com.google.javascript.jscomp.CompilerInput;
+import com.google.javascript.jscomp.CompilerOptions;
+import com.google.javascript.rhino.InputId;
+import com.google.javascript.rhino.Node;
+
+import java.io.PrintStream;
+
+/**
+ * 带时间预算的 Compiler
+ * Closure Compiler 不响应线程中断（Compiler.setTimeout 只是不再等待，编译线程仍继续运行），
+ * 因此在解析阶段的入口和出口、读取输入文件，以及各个 pass 频繁调用的方法（读取编译选项、报告 AST 修改、
+ * 修改计数）中检查截止时间，超时后抛出异常结束本次编译，已生成的 AST 等数据随 Compiler 一起被回收
+ * 这是协作式的检查：解析单个超大文件、很少调用上述方法的 pass 在执行期间无法打断，实际耗时可能超出预算
+ */
+final class DeadlineCompiler extends Compiler {
+
+    /**
+     * 编译超出时间预算
+     */
+    static final class TimeoutException extends RuntimeException {
+        TimeoutException(long timeoutMillis) {
+            super("编译超时（超过 " + timeoutMillis + " 毫秒）", null, false, false);
+        }
+    }
+
+    private static final int CHECK_INTERVAL = 256; // 每调用多少次检查一次时间
+
+    private final long timeoutMillis;
+    private final long deadline;
+    private int calls;
+
+    /**
+     * @param timeoutMillis 时间预算（毫秒），用于超时提示
+     * @param deadline 截止时间（System.nanoTime），超时后的降级编译传入首次编译的截止时间，只使用剩余的时间
+     */
+    DeadlineCompiler(PrintStream out, long timeoutMillis, long deadline) {
+        super(out);
+        this.timeoutMillis = timeoutMillis;
+        this.deadline = deadline;
+    }
+
+    @Override
+    public void parseForCompilation() {
+        checkDeadlineNow();
+        super.parseForCompilation();
+        // 解析结束后立即检查，不必等到 pass 中的下一次检查
+        checkDeadlineNow();
+    }
+
+    @Override
+    public CompilerInput getInput(InputId id) {
+        checkDeadline();
+        return super.getInput(id);
+    }
+
+    @Override
+    public void incrementChangeStamp() {
+        checkDeadline();
+        super.incrementChangeStamp();
+    }
+
+    @Override
+    public CompilerOptions getOptions() {
+        checkDeadline();
+        return super.getOptions();
+    }
+
+    @Override
+    public void reportChangeToEnclosingScope(Node n) {
+        checkDeadline();
+        super.reportChangeToEnclosingScope(n);
+    }
+
+    private void checkDeadline() {
+        if (++calls % CHECK_INTERVAL == 0) {
+            checkDeadlineNow();
+        }
+    }
+
+    private void checkDeadlineNow() {
+        if (System.nanoTime() - deadline > 0) {
+            throw new TimeoutException(timeoutMillis);
+        }
+    }
+
+    /**
+     * 异常（可能被 Closure 的编译线程包装过）是否由超时引起
+     */
+    static boolean isTimeout(Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,132 @@
+package tech.flowerbirds;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 同一批文件中的重复文件检测：内容完全相同的文件只编译一次，其余文件直接使用第一次的编译结果
+ * 编译结果在写入前保存在内存中，写入后只记录输出文件，需要时再从磁盘读取（或以硬链接方式输出）
+ * 流水线保证同一内容不会同时被两个编译线程编译（见 CompilePipeline）
+ */
+final class DuplicateIndex {
+
+    /**
+     * 某一内容第一次编译的结果
+     */
+    static final class Original {
+        final File file;        // 第一次编译的文件
+        final boolean failed;   // 是否编译失败
+        final int errorCount;   // 编译错误数
+        final boolean timedOut; // 是否因编译超时而失败
+        private String output;  // 编译结果，写入磁盘后释放
+        private Path written;   // 已写入的输出文件
+        private long size;
+        private long lastModified;
+
+        Original(File file, String output, int errorCount, boolean timedOut) {
+            this.file = file;
+            this.failed = output == null;
+            this.errorCount = errorCount;
+            this.timedOut = timedOut;
+            this.output = output;
+        }
+
+        /**
+         * 已写入磁盘且未被改动的输出文件，可以作为硬链接的目标；否则返回 null
+         */
+        synchronized Path writtenFile() throws IOException {
+            if (written == null) {
+                return null;
+            }
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(written, BasicFileAttributes.class);
+                return attrs.size() == size && attrs.lastModifiedTime().toMillis() == lastModified ? written : null;
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+        }
+
+        /**
+         * 编译结果：写入前直接返回内存中的内容，写入后从输出文件读取；输出文件已被改动时返回 null
+         */
+        synchronized String output() throws IOException {
+            if (output != null) {
+                return output;
+            }
+            Path file = writtenFile();
+            return file == null ? null : new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        }
+
+        synchronized void written(Path target) throws IOException {
+            BasicFileAttributes attrs = Files.readAttributes(target, BasicFileAttributes.class);
+            written = target;
+            size = attrs.size();
+            lastModified = attrs.lastModifiedTime().toMillis();
+            output = null;
+        }
+    }
+
+    private final Map<String, Original> originals = new ConcurrentHashMap<>();
+    private final AtomicInteger saved = new AtomicInteger();
+    private final AtomicInteger linked = new AtomicInteger();
+
+    /**
+     * 计算源码内容的哈希（相同内容的文件哈希相同）
+     */
+    static String hash(byte[] source) {
+        return CompileCache.toHex(CompileCache.sha256().digest(source));
+    }
+
+    /**
+     * 查找该内容第一次编译的结果，没有时返回 null
+     */
+    Original find(String hash) {
+        return originals.get(hash);
+    }
+
+    /**
+     * 记录第一次编译的结果
+     * @param output 编译结果，编译失败或超时时为 null
+     */
+    void compiled(String hash, File file, String output, int errorCount, boolean timedOut) {
+        originals.putIfAbsent(hash, new Original(file, output, errorCount, timedOut));
+    }
+
+    /**
+     * 第一次编译的结果已写入目标文件，释放内存中的编译结果
+     */
+    void written(String hash, File file, Path target) throws IOException {
+        Original original = originals.get(hash);
+        if (original != null && original.file.equals(file)) {
+            original.written(target);
+        }
+    }
+
+    /** 记录一次因内容重复而省去的编译 */
+    void reused() {
+        saved.incrementAndGet();
+    }
+
+    /** 记录一个以硬链接方式输出的文件 */
+    void linked() {
+        linked.incrementAndGet();
+    }
+
+    /** 省去的编译次数 */
+    int saved() {
+        return saved.get();
+    }
+
+    /** 以硬链接方式输出的文件数 */
+    int linkedCount() {
+        return linked.get();
+    }
+}
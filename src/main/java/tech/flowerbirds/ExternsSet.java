@@ -0,0 +1,129 @@
+package tech.flowerbirds;
+
+import com.google.javascript.jscomp.CommandLineRunner;
+import com.google.javascript.jscomp.CompilerOptions;
+import com.google.javascript.jscomp.SourceFile;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 一次运行中所有编译共用的 externs
+ * 每个 externs 文件（包括 Closure 内置的浏览器 externs）只读取一次，文件名和内容字符串在所有编译之间共享，
+ * 不再为每个文件重复读盘、解压和创建字符串；守护进程中文件未变化时跨请求复用
+ * SourceFile 不是线程安全的（Closure 会在编译过程中清除其缓存的内容），因此每次编译都用共享的字符串创建新的 SourceFile
+ */
+final class ExternsSet {
+
+    /** -externs 中表示 Closure 内置浏览器 externs 的名称 */
+    static final String BUILTIN = "default";
+
+    private static final ExternsSet EMPTY = new ExternsSet("",
+            Collections.singletonList(new Source("externs.js", "")), "none", "无");
+
+    /**
+     * 一个 externs 文件的名称和内容
+     */
+    private static final class Source {
+        final String name;
+        final String code;
+
+        Source(String name, String code) {
+            this.name = name;
+            this.code = code;
+        }
+    }
+
+    private static ExternsSet lastLoaded; // 最近一次加载的结果，守护进程中下一个请求配置相同时直接复用
+
+    private final String key;                 // 配置和文件状态，用于判断能否复用
+    private final List<Source> files;
+    private final String fingerprint;         // 内容指纹，参与编译缓存键
+    private final String description;
+
+    private ExternsSet(String key, List<Source> files, String fingerprint, String description) {
+        this.key = key;
+        this.files = files;
+        this.fingerprint = fingerprint;
+        this.description = description;
+    }
+
+    /**
+     * 不使用任何 externs（与之前的行为一致）
+     */
+    static ExternsSet empty() {
+        return EMPTY;
+    }
+
+    /**
+     * 加载 externs
+     * @param includeBuiltin 是否包含 Closure 内置的浏览器 externs
+     * @param paths externs 文件列表
+     */
+    static synchronized ExternsSet load(boolean includeBuiltin, List<Path> paths) throws IOException {
+        if (!includeBuiltin && paths.isEmpty()) {
+            return EMPTY;
+        }
+
+        StringBuilder key = new StringBuilder(includeBuiltin ? BUILTIN : "");
+        for (Path path : paths) {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            key.append('\n').append(path.toAbsolutePath()).append('|')
+                    .append(attrs.size()).append('|').append(attrs.lastModifiedTime().toMillis());
+        }
+        if (lastLoaded != null && lastLoaded.key.equals(key.toString())) {
+            return lastLoaded;
+        }
+
+        List<Source> files = new ArrayList<>();
+        MessageDigest digest = CompileCache.sha256();
+        List<String> names = new ArrayList<>();
+        if (includeBuiltin) {
+            List<SourceFile> builtin = CommandLineRunner.getBuiltinExterns(CompilerOptions.Environment.BROWSER);
+            // 内置 externs 随 Closure 版本变化，版本号已包含在编译缓存键中
+            digest.update(BUILTIN.getBytes(StandardCharsets.UTF_8));
+            for (SourceFile file : builtin) {
+                files.add(new Source(file.getName(), file.getCode()));
+            }
+            names.add("Closure 内置浏览器 externs（" + builtin.size() + " 个文件）");
+        }
+        for (Path path : paths) {
+            byte[] content = Files.readAllBytes(path);
+            digest.update(path.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(content);
+            files.add(new Source(path.toString(), new String(content, StandardCharsets.UTF_8)));
+            names.add(path.toString());
+        }
+
+        lastLoaded = new ExternsSet(key.toString(), Collections.unmodifiableList(files),
+                CompileCache.toHex(digest.digest()), String.join(", ", names));
+        return lastLoaded;
+    }
+
+    /**
+     * 为一次编译创建 externs 源文件（内容字符串共用，SourceFile 每次新建）
+     */
+    List<SourceFile> newSourceFiles() {
+        List<SourceFile> sourceFiles = new ArrayList<>(files.size());
+        for (Source file : files) {
+            sourceFiles.add(SourceFile.fromCode(file.name, file.code));
+        }
+        return sourceFiles;
+    }
+
+    String fingerprint() {
+        return fingerprint;
+    }
+
+    String description() {
+        return description;
+    }
+}
@@ -0,0 +1,157 @@
+package tech.flowerbirds;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 单个文件处理过程中的控制台输出缓冲
+ * 并行编译时每个文件的输出先写入缓冲，处理完成后整体打印，避免多个文件的输出互相交错
+ */
+final class FileLog {
+
+    /** 所有文件共用的控制台锁，保证一次只打印一个文件的输出 */
+    private static final Object CONSOLE_LOCK = new Object();
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    /**
+     * 一段待输出的文本
+     */
+    private static class Entry {
+        final boolean error;   // true 输出到错误输出，false 输出到标准输出
+        final String text;     // 文本内容（已包含换行）
+
+        Entry(boolean error, String text) {
+            this.error = error;
+            this.text = text;
+        }
+    }
+
+    /**
+     * 控制台闸门：打开之前完成的文件的输出先暂存，打开时按完成顺序依次打印
+     * 用于在文件发现结束、打印文件总数之前就开始编译，但文件的输出仍排在总数之后
+     */
+    static final class Gate {
+        private List<FileLog> held = new ArrayList<>(); // 为 null 表示闸门已打开
+
+        private synchronized boolean hold(FileLog log) {
+            if (held == null) {
+                return false;
+            }
+            held.add(log);
+            return true;
+        }
+
+        /**
+         * 打开闸门并打印暂存的输出，之后完成的文件直接打印
+         */
+        void open() {
+            List<FileLog> logs;
+            synchronized (this) {
+                logs = held;
+                held = null;
+            }
+            if (logs != null) {
+                for (FileLog log : logs) {
+                    log.print();
+                }
+            }
+        }
+    }
+
+    private final PrintStream out;
+    private final PrintStream err;
+    private final Gate gate;
+    private final List<Entry> entries = new ArrayList<>();
+    // Closure Compiler 自身的错误报告输出（原先直接写到 System.out）
+    private final ByteArrayOutputStream compilerBuffer = new ByteArrayOutputStream();
+    private final PrintStream compilerStream = new PrintStream(compilerBuffer, true);
+
+    /**
+     * @param out 标准输出
+     * @param err 错误输出
+     */
+    FileLog(PrintStream out, PrintStream err) {
+        this(out, err, null);
+    }
+
+    /**
+     * @param gate 控制台闸门，为 null 时 flush 直接打印
+     */
+    FileLog(PrintStream out, PrintStream err, Gate gate) {
+        this.out = out;
+        this.err = err;
+        this.gate = gate;
+    }
+
+    /**
+     * 追加一行标准输出
+     */
+    void out(String line) {
+        drainCompilerOutput();
+        entries.add(new Entry(false, line + LINE_SEPARATOR));
+    }
+
+    /**
+     * 追加一行错误输出
+     */
+    void err(String line) {
+        drainCompilerOutput();
+        entries.add(new Entry(true, line + LINE_SEPARATOR));
+    }
+
+    /**
+     * 追加异常堆栈（错误输出）
+     */
+    void printStackTrace(Throwable e) {
+        drainCompilerOutput();
+        StringWriter sw = new StringWriter();
+        e.printStackTrace(new PrintWriter(sw));
+        entries.add(new Entry(true, sw.toString()));
+    }
+
+    /**
+     * 提供给 Compiler 的输出流，内容按写入顺序并入标准输出
+     */
+    PrintStream compilerStream() {
+        return compilerStream;
+    }
+
+    /**
+     * 将缓冲的全部输出一次性打印到控制台（闸门未打开时暂存，打开时再打印）
+     */
+    void flush() {
+        drainCompilerOutput();
+        if (gate != null && gate.hold(this)) {
+            return;
+        }
+        print();
+    }
+
+    private void print() {
+        synchronized (CONSOLE_LOCK) {
+            for (Entry entry : entries) {
+                if (entry.error) {
+                    out.flush();
+                    err.print(entry.text);
+                    err.flush();
+                } else {
+                    out.print(entry.text);
+                }
+            }
+            out.flush();
+        }
+        entries.clear();
+    }
+
+    private void drainCompilerOutput() {
+        compilerStream.flush();
+        if (compilerBuffer.size() > 0) {
+            entries.add(new Entry(false, compilerBuffer.toString()));
+            compilerBuffer.reset();
+        }
+    }
+}
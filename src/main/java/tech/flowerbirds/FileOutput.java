@@ -0,0 +1,117 @@
+package tech.flowerbirds;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 覆盖源文件：压缩结果先写入源文件同目录下的临时文件，再原子替换源文件
+ * 临时文件与源文件在同一文件系统中，替换只是一次改名；进程中途退出时源文件要么是原内容，要么是完整的新内容
+ * Source Map 同样先写临时文件，在替换源文件之前先替换同目录的 xxx.js.map：Source Map 写入失败时源文件保持原内容，
+ * 不会出现源文件已被压缩、却没有记录为成功（也就没有写入输出清单）的情况；写入失败时丢弃尚未生效的 Source Map 临时文件
+ */
+final class FileOutput implements OutputSink {
+
+    private final Map<Path, Path> pendingMaps = new ConcurrentHashMap<>(); // 源文件 → 尚未生效的 Source Map 临时文件
+
+    @Override
+    public Path write(Path source, byte[] code) throws IOException {
+        Path tempFile = tempFile(source, "");
+        boolean written = false;
+        try {
+            Files.write(tempFile, code);
+            installSourceMap(source);
+            replace(tempFile, source);
+            written = true;
+        } finally {
+            Files.deleteIfExists(tempFile);
+            if (!written) {
+                discardSourceMap(source);
+            }
+        }
+        return source;
+    }
+
+    /**
+     * 以硬链接方式覆盖源文件，指向内容相同的已写入文件
+     * @return 是否成功；不在同一文件系统或文件系统不支持硬链接时返回 false，由调用方改为写入内容（Source Map 仍保留待写入）
+     */
+    boolean link(Path source, Path existing) throws IOException {
+        Path tempFile = tempFile(source, "");
+        try {
+            Files.createLink(tempFile, existing);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.deleteIfExists(tempFile);
+            return false;
+        }
+        boolean linked = false;
+        try {
+            installSourceMap(source);
+            replace(tempFile, source);
+            linked = true;
+        } finally {
+            Files.deleteIfExists(tempFile);
+            if (!linked) {
+                // 调用方把异常当作写入失败，不会再改为写入内容
+                discardSourceMap(source);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Writer openSourceMap(Path source) throws IOException {
+        Path tempFile = tempFile(source, ".map");
+        Path previous = pendingMaps.put(source, tempFile);
+        if (previous != null) {
+            Files.deleteIfExists(previous);
+        }
+        return Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void discardSourceMap(Path source) throws IOException {
+        Path tempFile = pendingMaps.remove(source);
+        if (tempFile != null) {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * 替换源文件之前，用临时文件替换 .map 文件
+     */
+    private void installSourceMap(Path source) throws IOException {
+        Path tempFile = pendingMaps.remove(source);
+        if (tempFile == null) {
+            return;
+        }
+        Path mapFile = SourceMaps.mapFile(source);
+        try {
+            replace(tempFile, mapFile);
+        } catch (IOException e) {
+            throw new IOException("Source Map 写入失败：" + mapFile + "，原因：" + e.getMessage(), e);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static Path tempFile(Path source, String suffix) {
+        return source.resolveSibling("." + source.getFileName() + suffix + "."
+                + UUID.randomUUID().toString().substring(0, 8) + ".tmp");
+    }
+
+    private static void replace(Path tempFile, Path target) throws IOException {
+        try {
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
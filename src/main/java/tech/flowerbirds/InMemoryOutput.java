@@ -0,0 +1,84 @@
+package tech.flowerbirds;
+
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 把压缩结果和 Source Map 保存在内存中，不写入磁盘，源文件保持不变
+ * 供构建工具在进程内直接取用结果，省去写入再读回的过程；以传给 compileAsync 的路径为键
+ */
+public final class InMemoryOutput implements OutputSink {
+
+    private final Map<Path, byte[]> code = new ConcurrentHashMap<>();
+    private final Map<Path, String> sourceMaps = new ConcurrentHashMap<>();
+    private final Map<Path, StringWriter> pendingMaps = new ConcurrentHashMap<>(); // 尚未随压缩结果生效的 Source Map
+
+    InMemoryOutput() {
+    }
+
+    @Override
+    public Path write(Path source, byte[] code) {
+        this.code.put(source, code);
+        StringWriter map = pendingMaps.remove(source);
+        if (map != null) {
+            sourceMaps.put(source, map.toString());
+        }
+        return null;
+    }
+
+    @Override
+    public Writer openSourceMap(Path source) {
+        StringWriter map = new StringWriter();
+        pendingMaps.put(source, map);
+        return map;
+    }
+
+    @Override
+    public void discardSourceMap(Path source) {
+        pendingMaps.remove(source);
+    }
+
+    /**
+     * 压缩结果，没有该文件的结果时返回 null
+     */
+    public String code(Path source) {
+        byte[] bytes = code.get(source);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 压缩结果的 UTF-8 字节（返回的数组不要修改），没有该文件的结果时返回 null
+     */
+    public byte[] bytes(Path source) {
+        return code.get(source);
+    }
+
+    /**
+     * Source Map，未生成时返回 null
+     */
+    public String sourceMap(Path source) {
+        return sourceMaps.get(source);
+    }
+
+    /**
+     * 已有压缩结果的源文件
+     */
+    public Set<Path> sources() {
+        return Collections.unmodifiableSet(code.keySet());
+    }
+
+    /**
+     * 清空已保存的结果
+     */
+    public void clear() {
+        code.clear();
+        sourceMaps.clear();
+        pendingMaps.clear();
+    }
+}
@@ -1,149 +1,740 @@
 package tech.flowerbirds;
 
-import com.google.javascript.jscomp.*;
 import com.google.javascript.jscomp.Compiler;
-import com.google.javascript.jscomp.CompilerOptions.LanguageMode;
+import com.google.javascript.jscomp.CompilerOptions;
+import com.google.javascript.jscomp.SourceFile;
 import java.io.*;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 
 /**
  * Closure Compiler 批量编译 JS 并覆盖源文件
+ * 命令行入口：解析参数并转换为 CompileConfig，文件的编译由 CompileEngine 完成，本类负责文件发现和汇总输出
  */
 public class JsCompiler {
 
-    /**
-     * 代码行数统计结果
-     */
-    private static class LineCountResult {
-        long beforeCount;      // 编译前的行数
-        long afterCount;       // 编译后的行数
-        boolean success;       // 编译是否成功
-        
-        LineCountResult(long beforeCount, long afterCount, boolean success) {
-            this.beforeCount = beforeCount;
-            this.afterCount = afterCount;
-            this.success = success;
-        }
-    }
-
     // 配置项（可根据需求调整）
     private static String TARGET_DIR = "src/main/resources"; // 要扫描的JS根目录
     private static String FILE_LIST = ""; // 文件列表路径（可选）
     private static String ROOT_DIR = ""; // 根目录路径（可选，配合FILE_LIST使用）
-    private static final CompilationLevel COMPILE_LEVEL = CompilationLevel.SIMPLE_OPTIMIZATIONS; // 优化级别
-    private static final LanguageMode INPUT_LANG = LanguageMode.ECMASCRIPT_2020; // 输入JS版本
-    private static final LanguageMode OUTPUT_LANG = LanguageMode.ECMASCRIPT5; // 输出兼容版本
-    private static final String IGNORE_DIR = "src/main/js/test"; // 排除的目录（可选）
     private static String[] KEYWORDS = {}; // 关键字过滤（可选），空数组表示不过滤
     private static long FILE_SIZE_THRESHOLD = 0; // 文件大小阈值（KB），0表示不过滤
     private static String CLOC_MODE = ""; // 代码行数统计模式：空字符串(不统计)、"after"(压缩后)、"before"(压缩前)、"all"(前后都统计)
+    private static int THREADS = Runtime.getRuntime().availableProcessors(); // 并行编译线程数，默认等于CPU核数
+    private static int SCAN_THREADS = 1; // 目录遍历线程数，1表示串行遍历
+    private static int IO_THREADS = 2; // 流水线中读取和写入文件的线程数（各自）
+    private static long READ_AHEAD_MB = 256; // 已读入但尚未写出的源码大小上限（MB）
+    private static long HEAP_BUDGET = 0; // 同时编译的文件估算堆内存之和的上限（字节），0表示使用最大堆内存的3/4
+    private static String CACHE_DIR = ""; // 增量编译缓存目录，空字符串表示不启用缓存
+    private static long CACHE_SIZE_MB = 512; // 缓存大小上限（MB），0表示不限制
+    private static String MANIFEST_FILE = ""; // 输出清单文件路径，空字符串表示不启用清单
+    private static OutputManifest MANIFEST; // 启用清单时的清单实例
+    private static String EXTERNS_SPEC = ""; // externs 列表（逗号分隔，default 表示内置浏览器 externs），空字符串表示不使用
+    private static String REPORT_FILE = ""; // 性能报告路径（.csv 输出 CSV，其他输出 JSON），空字符串表示不生成
+    private static int REPORT_TOP = 10; // 报告中列出最慢文件的个数
+    private static boolean PASS_TIMING = false; // 是否统计 Closure Compiler 各个 pass 的耗时
+    private static CompileReport REPORT; // 生成报告时的报告实例
+    private static boolean WATCH = false; // 是否在首次编译后持续监听目录变化
+    private static long DEBOUNCE_MS = 300; // 监听模式下合并连续变化的等待时间（毫秒）
+    private static List<Precompressor.Format> PRECOMPRESS = new ArrayList<>(); // 预压缩格式，空列表表示不生成旁路文件
+    private static Precompressor PRECOMPRESSOR; // 启用预压缩时当前这批文件的压缩器
+    private static String DEDUP_MODE = ""; // 重复文件检测：空字符串(不检测)、"copy"(写入相同内容)、"link"(尽量使用硬链接)
+    private static String CHUNK_MODE = ""; // 分组合并编译：空字符串(每个文件单独编译)、"dir"(按目录分组)、"list"(按文件列表中的分组)
+    private static boolean SOURCE_MAP = false; // 是否为压缩结果生成 Source Map（同目录的 xxx.js.map）
+    private static long TIMEOUT_MS = 0; // 单个文件的编译时间预算（毫秒），0表示不限制
+    private static boolean TIMEOUT_FALLBACK = false; // 超时后是否改用 WHITESPACE_ONLY 重新编译，否则保持源文件不变
+    private static ShardPlan SHARD; // 分片编译时本节点的分片，null 表示处理全部文件
+    private static String SHARD_OUT = ""; // 分片结果文件路径，空字符串表示 shard-K-of-N.txt
+    private static ShardResult SHARD_RESULT; // 分片编译时本分片的处理结果
+    private static String MERGE_SPEC = ""; // 要合并的分片结果（逗号分隔的文件或目录），非空时只合并不编译
+    private static CompileEngine ENGINE; // 按本次参数创建的编译引擎
+
+    // 运行环境（守护进程模式下每个请求各自设置）
+    private static Path WORK_DIR; // 相对路径的基准目录，null 表示进程当前目录
+    private static PrintStream OUT = System.out; // 标准输出
+    private static PrintStream ERR = System.err; // 错误输出
 
     public static void main(String[] args) {
+        // 守护进程模式 / 客户端模式
+        for (String arg : args) {
+            if (arg.equals("-daemon") || arg.startsWith("-daemon=")) {
+                CompileDaemon.serve(args);
+                return;
+            }
+            if (arg.equals("-client") || arg.startsWith("-client=")) {
+                System.exit(CompileDaemon.send(args));
+            }
+        }
+
+        int exitCode = runBatch(args, System.out, System.err, null);
+        if (exitCode != 0) {
+            System.exit(exitCode);
+        }
+    }
+
+    /**
+     * 执行一次批量编译（命令行模式和守护进程模式共用）
+     * 命令行参数保存在静态字段中，因此同一时刻只允许一个批次执行；在进程内同时编译多批文件请直接使用 CompileEngine
+     * @param out 标准输出
+     * @param err 错误输出
+     * @param workDir 相对路径的基准目录，null 表示进程当前目录
+     * @return 退出码，参数错误时返回 1
+     */
+    static synchronized int runBatch(String[] args, PrintStream out, PrintStream err, Path workDir) {
+        resetConfiguration();
+        OUT = out;
+        ERR = err;
+        WORK_DIR = workDir;
+        try {
+            return compileBatch(args);
+        } finally {
+            OUT = System.out;
+            ERR = System.err;
+            WORK_DIR = null;
+            ENGINE = null;
+            MANIFEST = null;
+            REPORT = null;
+            PRECOMPRESSOR = null;
+            SHARD_RESULT = null;
+        }
+    }
+
+    /**
+     * 恢复默认配置，避免守护进程中上一个请求的参数影响下一个请求
+     */
+    private static void resetConfiguration() {
+        TARGET_DIR = "src/main/resources";
+        FILE_LIST = "";
+        ROOT_DIR = "";
+        KEYWORDS = new String[0];
+        FILE_SIZE_THRESHOLD = 0;
+        CLOC_MODE = "";
+        THREADS = Runtime.getRuntime().availableProcessors();
+        SCAN_THREADS = 1;
+        IO_THREADS = 2;
+        READ_AHEAD_MB = 256;
+        HEAP_BUDGET = 0;
+        CACHE_DIR = "";
+        CACHE_SIZE_MB = 512;
+        MANIFEST_FILE = "";
+        MANIFEST = null;
+        EXTERNS_SPEC = "";
+        REPORT_FILE = "";
+        REPORT_TOP = 10;
+        PASS_TIMING = false;
+        REPORT = null;
+        WATCH = false;
+        DEBOUNCE_MS = 300;
+        PRECOMPRESS = new ArrayList<>();
+        PRECOMPRESSOR = null;
+        DEDUP_MODE = "";
+        CHUNK_MODE = "";
+        SOURCE_MAP = false;
+        TIMEOUT_MS = 0;
+        TIMEOUT_FALLBACK = false;
+        SHARD = null;
+        SHARD_OUT = "";
+        SHARD_RESULT = null;
+        MERGE_SPEC = "";
+        ENGINE = null;
+    }
+
+    /**
+     * 将相对路径解析到当前请求的工作目录下
+     */
+    private static Path resolvePath(String path) {
+        return WORK_DIR == null ? Paths.get(path) : WORK_DIR.resolve(path);
+    }
+
+    private static int compileBatch(String[] args) {
         // 检查是否需要显示帮助信息
         for (String arg : args) {
             if (arg.equals("-help") || arg.equals("-h") || arg.equals("--help")) {
                 printHelp();
-                return;
+                return 0;
             }
         }
         
         try {
             // 解析命令行参数
-            parseArguments(args);
-            
-            // 根据参数选择文件处理方式
-            List<File> jsFiles;
-            if (!FILE_LIST.isEmpty()) {
-                // 从文件列表读取JS文件
-                jsFiles = readJsFilesFromFileList(FILE_LIST, ROOT_DIR);
-            } else {
-                // 扫描目录下所有JS文件
-                jsFiles = scanJsFiles(TARGET_DIR);
+            if (!parseArguments(args)) {
+                return 1;
+            }
+
+            // 合并各节点的分片结果，不编译
+            if (!MERGE_SPEC.isEmpty()) {
+                return mergeShards(MERGE_SPEC);
             }
             
-            if (jsFiles.isEmpty()) {
-                System.out.println("⚠️ 未找到需要编译的JS文件");
-                return;
+            // 加载输出清单，扫描时跳过上次已生成且未被改动的压缩文件
+            if (!MANIFEST_FILE.isEmpty()) {
+                MANIFEST = OutputManifest.load(resolvePath(MANIFEST_FILE));
+            }
+
+            // 按参数创建编译引擎：externs 只读取一次，所有文件的编译共用；启用缓存时创建缓存目录
+            try {
+                ENGINE = new CompileEngine(buildConfig());
+            } catch (IOException e) {
+                ERR.println("❌ " + e.getMessage());
+                return 1;
+            }
+            if (!EXTERNS_SPEC.isEmpty()) {
+                OUT.println("已加载 externs: " + ENGINE.externs().description());
+            }
+
+            // 监听模式：先开始监听再执行首次编译，首次编译期间发生的变化也不会遗漏
+            SourceWatcher watcher = null;
+            if (WATCH) {
+                if (WORK_DIR != null) {
+                    ERR.println("❌ 错误：守护进程模式不支持 -watch 参数");
+                    return 1;
+                }
+                if (MANIFEST == null) {
+                    // 未指定清单时使用内存中的清单，用于识别本工具自己写入的压缩结果
+                    MANIFEST = OutputManifest.inMemory();
+                }
+                watcher = new SourceWatcher(resolvePath(TARGET_DIR), ENGINE.newScanner(MANIFEST, ERR), DEBOUNCE_MS, ERR);
             }
-            System.out.println("找到 " + jsFiles.size() + " 个JS文件待处理");
-
-            // 2. 逐个编译并覆盖源文件
-            int successCount = 0;
-            int failCount = 0;
-            long totalBeforeLineCount = 0;  // 压缩前总行数
-            long totalAfterLineCount = 0;   // 压缩后总行数
-            // 用于记录编译失败的文件路径
-            List<String> failedFiles = new ArrayList<>();
-
-            for (File srcFile : jsFiles) {
-                LineCountResult result = compileAndOverwrite(srcFile);
-                if (result != null) {
-                    // 统计成功/失败的编译
-                    if (result.success) {
-                        successCount++;
+            try {
+                // 根据参数选择文件处理方式
+                FileSource discovery = sink -> {
+                    if (!FILE_LIST.isEmpty()) {
+                        // 从文件列表读取JS文件
+                        readJsFilesFromFileList(FILE_LIST, ROOT_DIR).forEach(sink);
                     } else {
-                        failCount++;
-                        failedFiles.add(srcFile.getAbsolutePath());
+                        // 扫描目录下所有JS文件
+                        scanJsFiles(TARGET_DIR, sink);
                     }
+                };
+                if (SHARD != null) {
+                    compileShard(discovery);
+                } else {
+                    compileFiles(discovery);
+                }
+                if (watcher != null) {
+                    watch(watcher);
+                }
+            } finally {
+                if (watcher != null) {
+                    watcher.close();
+                }
+            }
+
+        } catch (Exception e) {
+            ERR.println("❌ 整体执行失败：" + e.getMessage());
+            e.printStackTrace(ERR);
+        }
+        return 0;
+    }
+
+    /**
+     * 待处理文件的来源，每找到一个文件就交给 sink
+     */
+    private interface FileSource {
+        void forEach(Consumer<File> sink) throws IOException;
+    }
+
+    /**
+     * 编译一批文件并输出统计结果（首次编译和监听模式下的每次重新编译共用）
+     */
+    private static void compileFiles(FileSource source) throws IOException, InterruptedException {
+        // 生成性能报告（每批文件各自统计）
+        REPORT = REPORT_FILE.isEmpty() ? null : new CompileReport();
+        int skippedBefore = MANIFEST != null ? MANIFEST.skipped() : 0;
+        CompileCache cache = ENGINE.cache();
+        int hitsBefore = cache != null ? cache.hits() : 0;
+        int missesBefore = cache != null ? cache.misses() : 0;
+        int recordedBefore = MANIFEST != null ? MANIFEST.recorded() : 0;
+        PRECOMPRESSOR = PRECOMPRESS.isEmpty() ? null : new Precompressor(PRECOMPRESS, IO_THREADS, ERR);
+        // 文件在扫描结束前就开始编译，各文件的输出先暂存，打印文件总数后再输出，控制台顺序与串行执行一致
+        FileLog.Gate console = new FileLog.Gate();
+        CompileEngine.Batch batch = ENGINE.newBatch(JsCompiler::recordOutput, console);
 
-                    // 根据CLOC_MODE输出统计信息（不管编译是否成功）
-                    if (!CLOC_MODE.isEmpty()) {
-                        if (CLOC_MODE.equals("before")) {
-                            System.out.println("  📊 压缩前代码行数: " + result.beforeCount);
-                            totalBeforeLineCount += result.beforeCount;
-                        } else if (CLOC_MODE.equals("after")) {
-                            System.out.println("  📊 代码行数: " + result.afterCount);
-                            totalAfterLineCount += result.afterCount;
-                        } else if (CLOC_MODE.equals("all")) {
-                            System.out.println("  📊 压缩前: " + result.beforeCount + " 行，压缩后: " + result.afterCount + " 行");
-                            totalBeforeLineCount += result.beforeCount;
-                            totalAfterLineCount += result.afterCount;
-                        }
+        List<File> jsFiles = new ArrayList<>();
+        List<CompletableFuture<CompileResult>> futures = new ArrayList<>();
+        boolean discovered = false;
+        try {
+            if (CHUNK_MODE.isEmpty()) {
+                submitToPipeline(source, batch, jsFiles, futures);
+            } else {
+                submitChunks(source, batch, jsFiles, futures);
+            }
+            discovered = true;
+        } finally {
+            if (!discovered) {
+                // 扫描出错时仍然打印已处理文件的输出
+                console.open();
+            }
+        }
+        
+        if (MANIFEST != null && MANIFEST.skipped() > skippedBefore) {
+            OUT.println("跳过 " + (MANIFEST.skipped() - skippedBefore) + " 个与输出清单一致的已压缩文件");
+        }
+        if (jsFiles.isEmpty()) {
+            OUT.println("⚠️ 未找到需要编译的JS文件");
+            console.open();
+            return;
+        }
+        OUT.println("找到 " + jsFiles.size() + " 个JS文件待处理");
+        console.open();
+
+        // 按文件发现顺序汇总结果，保证统计和失败列表与串行执行完全一致
+        int successCount = 0;
+        int failCount = 0;
+        long totalBeforeLineCount = 0;  // 压缩前总行数
+        long totalAfterLineCount = 0;   // 压缩后总行数
+        // 用于记录编译失败的文件路径
+        List<String> failedFiles = new ArrayList<>();
+        int timeoutCount = 0;   // 编译超时的文件数
+        int fallbackCount = 0;  // 超时后改用 WHITESPACE_ONLY 编译的文件数
+
+        for (int i = 0; i < jsFiles.size(); i++) {
+            File srcFile = jsFiles.get(i);
+            CompileResult result;
+            try {
+                result = futures.get(i).get();
+            } catch (ExecutionException e) {
+                ERR.println("❌ 处理文件失败：" + srcFile.getPath() + "，原因：" + e.getCause());
+                result = null;
+            }
+            if (result != null) {
+                if (REPORT != null) {
+                    REPORT.add(result.stats);
+                    if (result.stats.passes != null) {
+                        REPORT.addPasses(result.stats.passes);
                     }
+                }
+                boolean timedOut = result.timedOut();
+                if (timedOut) {
+                    timeoutCount++;
+                } else if (result.fallback()) {
+                    fallbackCount++;
+                }
+                // 统计成功/失败的编译
+                if (result.success()) {
+                    successCount++;
                 } else {
                     failCount++;
-                    failedFiles.add(srcFile.getAbsolutePath());
+                    failedFiles.add(failedEntry(srcFile.getAbsolutePath(), timedOut));
                 }
+
+                // 根据CLOC_MODE累计统计信息（不管编译是否成功）
+                if (CLOC_MODE.equals("before") || CLOC_MODE.equals("all")) {
+                    totalBeforeLineCount += result.linesBefore();
+                }
+                if (CLOC_MODE.equals("after") || CLOC_MODE.equals("all")) {
+                    totalAfterLineCount += result.linesAfter();
+                }
+            } else {
+                failCount++;
+                failedFiles.add(srcFile.getAbsolutePath());
             }
+            if (SHARD_RESULT != null) {
+                SHARD_RESULT.add(new ShardResult.Entry(SHARD.orderOf(srcFile), result != null && result.success(),
+                        result != null && result.timedOut(),
+                        result != null ? result.linesBefore() : 0, result != null ? result.linesAfter() : 0,
+                        result != null ? result.totalNanos() / 1_000_000 : 0,
+                        SHARD.nameOf(srcFile)));
+            }
+        }
 
-            // 3. 输出统计结果
-            System.out.println("\n✅ 处理完成：成功 " + successCount + " 个，失败 " + failCount + " 个");
-            
-            // 如果启用了CLOC模式，输出总代码行数统计
-            if (!CLOC_MODE.isEmpty() && successCount > 0) {
-                if (CLOC_MODE.equals("before")) {
-                    System.out.println("📈 压缩前总代码行数: " + totalBeforeLineCount + " 行");
-                } else if (CLOC_MODE.equals("after")) {
-                    System.out.println("📈 压缩后总代码行数: " + totalAfterLineCount + " 行");
-                } else if (CLOC_MODE.equals("all")) {
-                    System.out.println("📈 压缩前总代码行数: " + totalBeforeLineCount + " 行");
-                    System.out.println("📈 压缩后总代码行数: " + totalAfterLineCount + " 行");
-                    long reduction = totalBeforeLineCount - totalAfterLineCount;
-                    double ratio = totalBeforeLineCount > 0 ? (reduction * 100.0 / totalBeforeLineCount) : 0;
-                    System.out.println("📈 压缩率: " + reduction + " 行 (" + String.format("%.2f%%", ratio) + ")");
-                }
-            }
-
-            // 如果有编译失败的文件，将路径写入 error_files.txt（位于当前工作目录）
-            if (!failedFiles.isEmpty()) {
-                Path errorFile = Paths.get("error_files.txt");
-                try {
-                    Files.write(errorFile, failedFiles, StandardCharsets.UTF_8,
-                            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-                    System.out.println("📌 编译失败文件列表已保存到: " + errorFile.toAbsolutePath());
-                } catch (IOException e) {
-                    System.err.println("⚠️ 无法写入 error_files.txt: " + e.getMessage());
+        // 等待预压缩全部完成
+        if (PRECOMPRESSOR != null) {
+            PRECOMPRESSOR.finish();
+        }
+
+        // 3. 输出统计结果
+        printTotals(successCount, failCount, totalBeforeLineCount, totalAfterLineCount);
+
+        // 如果启用了编译时间预算，输出超时的文件数
+        if (timeoutCount > 0 || fallbackCount > 0) {
+            OUT.println("⏱️ 编译超时: " + (timeoutCount + fallbackCount) + " 个文件"
+                    + (fallbackCount > 0 ? "，其中 " + fallbackCount + " 个已改用 WHITESPACE_ONLY 编译" : "")
+                    + (timeoutCount > 0 ? "，" + timeoutCount + " 个保持不变" : ""));
+        }
+
+        // 如果启用了重复文件检测，输出节省的编译次数
+        DuplicateIndex duplicates = batch.duplicates();
+        if (duplicates != null && duplicates.saved() > 0) {
+            OUT.println("♊ 重复文件: " + duplicates.saved() + " 个文件与其他文件内容相同，节省 " + duplicates.saved() + " 次编译"
+                    + (duplicates.linkedCount() > 0 ? "，其中 " + duplicates.linkedCount() + " 个以硬链接输出" : ""));
+        }
+
+        // 如果启用了预压缩，输出各格式压缩后的总大小
+        if (PRECOMPRESSOR != null) {
+            long original = PRECOMPRESSOR.inputBytes();
+            OUT.println("🗜️ 预压缩: " + PRECOMPRESSOR.files() + " 个文件，压缩结果共 " + formatKb(original)
+                    + (PRECOMPRESSOR.failures() > 0 ? "，失败 " + PRECOMPRESSOR.failures() + " 个" : ""));
+            for (Precompressor.Format format : PRECOMPRESSOR.formats()) {
+                long compressed = PRECOMPRESSOR.compressedBytes(format);
+                double ratio = original > 0 ? compressed * 100.0 / original : 0;
+                OUT.println("🗜️ " + format.name + " 后共 " + formatKb(compressed) + " (" + String.format("%.2f%%", ratio) + ")");
+            }
+        }
+
+        // 如果启用了性能报告，输出耗时分布和最慢的文件，并写入报告文件
+        if (REPORT != null) {
+            REPORT.printSummary(OUT, REPORT_TOP);
+            Path reportFile = resolvePath(REPORT_FILE);
+            try {
+                REPORT.write(reportFile, REPORT_TOP);
+                OUT.println("📄 性能报告已保存到: " + reportFile.toAbsolutePath());
+            } catch (IOException e) {
+                ERR.println("⚠️ 无法写入性能报告: " + e.getMessage());
+            }
+        }
+
+        // 如果启用了缓存，输出命中情况并淘汰超出上限的条目
+        if (cache != null) {
+            OUT.println("♻️ 编译缓存：命中 " + (cache.hits() - hitsBefore) + " 个，未命中 " + (cache.misses() - missesBefore) + " 个");
+            try {
+                int evicted = cache.evict();
+                if (evicted > 0) {
+                    OUT.println("♻️ 缓存超出上限，已淘汰 " + evicted + " 个最久未使用的条目");
                 }
+            } catch (IOException e) {
+                ERR.println("⚠️ 清理编译缓存失败: " + e.getMessage());
             }
+        }
 
-        } catch (Exception e) {
-            System.err.println("❌ 整体执行失败：" + e.getMessage());
-            e.printStackTrace();
+        // 如果启用了输出清单，保存本次生成的文件指纹（监听模式下的内存清单不保存）
+        if (MANIFEST != null && MANIFEST.file() != null) {
+            try {
+                MANIFEST.save();
+                OUT.println("🧾 输出清单已更新: " + MANIFEST.file().toAbsolutePath() + "（本次记录 " + (MANIFEST.recorded() - recordedBefore) + " 个文件）");
+            } catch (IOException e) {
+                ERR.println("⚠️ 无法写入输出清单: " + e.getMessage());
+            }
+        }
+
+        // 如果有编译失败的文件，将路径写入 error_files.txt
+        writeErrorFiles(failedFiles);
+    }
+
+    /**
+     * 压缩结果写入后记录到输出清单，并直接压缩内存中的结果生成预压缩文件（不再重新读取文件）
+     */
+    private static void recordOutput(Path target, String code, byte[] bytes) throws IOException {
+        if (MANIFEST != null) {
+            MANIFEST.record(target, code);
+        }
+        if (PRECOMPRESSOR != null) {
+            try {
+                PRECOMPRESSOR.submit(target, bytes);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("等待预压缩时被中断");
+            }
+        }
+    }
+
+    /**
+     * 每找到一个文件就立即提交到流水线，按发现顺序记录文件和对应的结果
+     */
+    private static void submitToPipeline(FileSource source, CompileEngine.Batch batch, List<File> jsFiles,
+                                         List<CompletableFuture<CompileResult>> futures) throws IOException, InterruptedException {
+        // 每找到一个文件就立即提交到 读取 → 编译 → 写入 流水线
+        // （每个文件使用独立的 Compiler，互不依赖）
+        Consumer<File> submit = srcFile -> {
+            synchronized (jsFiles) {
+                jsFiles.add(srcFile);
+                futures.add(batch.submit(srcFile));
+            }
+        };
+        boolean scanned = false;
+        try {
+            source.forEach(submit);
+            scanned = true;
+        } finally {
+            batch.close();
+            if (!scanned) {
+                // 扫描出错时等待已提交的文件处理完，避免进程退出时中断正在覆盖的文件
+                batch.awaitTermination();
+            }
+        }
+    }
+
+    /**
+     * 分组合并编译（见 CompileEngine.Batch.submitGroups）：按目录或文件列表中的 [分组名] 分组
+     */
+    private static void submitChunks(FileSource source, CompileEngine.Batch batch, List<File> jsFiles,
+                                     List<CompletableFuture<CompileResult>> futures) throws IOException {
+        Map<String, List<File>> groups;
+        if (CHUNK_MODE.equals("list")) {
+            groups = readJsFileGroups(FILE_LIST, ROOT_DIR);
+        } else {
+            List<File> all = new ArrayList<>();
+            source.forEach(all::add);
+            groups = groupByDirectory(all);
+        }
+        groups.values().forEach(jsFiles::addAll);
+        futures.addAll(batch.submitGroups(groups));
+    }
+
+    /**
+     * 按所在目录分组，组内按文件名排序（作为组内的加载顺序）
+     */
+    private static Map<String, List<File>> groupByDirectory(List<File> files) {
+        Map<String, List<File>> groups = new LinkedHashMap<>();
+        for (File file : files) {
+            groups.computeIfAbsent(file.getAbsoluteFile().getParent(), k -> new ArrayList<>()).add(file);
+        }
+        groups.values().forEach(group -> group.sort(Comparator.comparing(File::getName)));
+        return groups;
+    }
+
+    /**
+     * 输出成功/失败数和代码行数统计（单机运行和合并分片结果共用）
+     */
+    private static void printTotals(int successCount, int failCount, long totalBeforeLineCount, long totalAfterLineCount) {
+        OUT.println("\n✅ 处理完成：成功 " + successCount + " 个，失败 " + failCount + " 个");
+        
+        // 如果启用了CLOC模式，输出总代码行数统计
+        if (!CLOC_MODE.isEmpty() && successCount > 0) {
+            if (CLOC_MODE.equals("before")) {
+                OUT.println("📈 压缩前总代码行数: " + totalBeforeLineCount + " 行");
+            } else if (CLOC_MODE.equals("after")) {
+                OUT.println("📈 压缩后总代码行数: " + totalAfterLineCount + " 行");
+            } else if (CLOC_MODE.equals("all")) {
+                OUT.println("📈 压缩前总代码行数: " + totalBeforeLineCount + " 行");
+                OUT.println("📈 压缩后总代码行数: " + totalAfterLineCount + " 行");
+                long reduction = totalBeforeLineCount - totalAfterLineCount;
+                double ratio = totalBeforeLineCount > 0 ? (reduction * 100.0 / totalBeforeLineCount) : 0;
+                OUT.println("📈 压缩率: " + reduction + " 行 (" + String.format("%.2f%%", ratio) + ")");
+            }
+        }
+    }
+
+    /**
+     * error_files.txt 中的一行：文件路径，超时的文件在制表符后注明原因（该文件仍可直接作为 -file 的文件列表）
+     */
+    private static String failedEntry(String path, boolean timedOut) {
+        return timedOut ? path + "\ttimeout" : path;
+    }
+
+    /**
+     * 如果有编译失败的文件，将路径写入 error_files.txt（位于当前工作目录）
+     */
+    private static void writeErrorFiles(List<String> failedFiles) {
+        if (!failedFiles.isEmpty()) {
+            Path errorFile = resolvePath("error_files.txt");
+            try {
+                Files.write(errorFile, failedFiles, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+                OUT.println("📌 编译失败文件列表已保存到: " + errorFile.toAbsolutePath());
+            } catch (IOException e) {
+                ERR.println("⚠️ 无法写入 error_files.txt: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 分片编译：先完成文件发现，按大小划分后只编译本分片的文件，并写入分片结果供 -merge 合并
+     */
+    private static void compileShard(FileSource discovery) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        // 划分需要完整的文件列表，因此本模式下先发现全部文件再开始编译
+        List<File> all = new ArrayList<>();
+        discovery.forEach(all::add);
+        SHARD.select(all, shardBase());
+        OUT.println("🧩 分片 " + SHARD.index + "/" + SHARD.count + ": 处理 " + SHARD.files().size() + " / " + SHARD.totalFiles()
+                + " 个文件（" + formatKb(SHARD.bytes()) + " / " + formatKb(SHARD.totalBytes()) + "）");
+
+        SHARD_RESULT = new ShardResult(SHARD.index, SHARD.count);
+        SHARD_RESULT.clocMode = CLOC_MODE;
+        compileFiles(SHARD.files()::forEach);
+        SHARD_RESULT.elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        Path resultFile = resolvePath(SHARD_OUT.isEmpty() ? "shard-" + SHARD.index + "-of-" + SHARD.count + ".txt" : SHARD_OUT);
+        try {
+            SHARD_RESULT.write(resultFile);
+            OUT.println("🧩 分片结果已保存到: " + resultFile.toAbsolutePath());
+        } catch (IOException e) {
+            ERR.println("⚠️ 无法写入分片结果: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 分片时计算相对路径的基准目录：扫描目录，或文件列表的根目录
+     */
+    private static Path shardBase() {
+        if (FILE_LIST.isEmpty()) {
+            return resolvePath(TARGET_DIR);
+        }
+        return ROOT_DIR.isEmpty() ? resolvePath(FILE_LIST).toAbsolutePath().getParent() : resolvePath(ROOT_DIR);
+    }
+
+    /**
+     * 合并各节点的分片结果，输出与单机运行相同的汇总和 error_files.txt
+     * @param spec 逗号分隔的分片结果文件或目录（目录中的 shard-*.txt）
+     * @return 退出码，结果文件缺失或不完整时返回 1
+     */
+    private static int mergeShards(String spec) {
+        List<Path> resultFiles = new ArrayList<>();
+        try {
+            for (String item : spec.split(",")) {
+                if (item.trim().isEmpty()) {
+                    continue;
+                }
+                Path path = resolvePath(item.trim());
+                if (Files.isDirectory(path)) {
+                    List<Path> found = new ArrayList<>();
+                    try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, "shard-*.txt")) {
+                        stream.forEach(found::add);
+                    }
+                    Collections.sort(found);
+                    resultFiles.addAll(found);
+                } else {
+                    resultFiles.add(path);
+                }
+            }
+        } catch (IOException e) {
+            ERR.println("❌ 无法读取分片结果目录: " + e.getMessage());
+            return 1;
+        }
+        if (resultFiles.isEmpty()) {
+            ERR.println("❌ 未找到分片结果文件: " + spec);
+            return 1;
+        }
+
+        List<ShardResult> shards = new ArrayList<>();
+        for (Path file : resultFiles) {
+            try {
+                shards.add(ShardResult.read(file));
+            } catch (IOException e) {
+                ERR.println("❌ 无法读取分片结果: " + e.getMessage());
+                return 1;
+            }
+        }
+
+        // 检查分片是否完整：分片总数一致，每个分片恰好一份
+        int count = shards.get(0).count;
+        boolean[] seen = new boolean[count + 1];
+        for (ShardResult shard : shards) {
+            if (shard.count != count) {
+                ERR.println("❌ 分片总数不一致: " + shard.index + "/" + shard.count + " 与 " + count);
+                return 1;
+            }
+            if (shard.index < 1 || shard.index > count || seen[shard.index]) {
+                ERR.println("❌ 分片重复或序号错误: " + shard.index + "/" + shard.count);
+                return 1;
+            }
+            seen[shard.index] = true;
+        }
+        List<String> missing = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            if (!seen[i]) {
+                missing.add(i + "/" + count);
+            }
+        }
+        if (!missing.isEmpty()) {
+            ERR.println("❌ 缺少分片结果: " + String.join(", ", missing));
+            return 1;
+        }
+
+        CLOC_MODE = shards.get(0).clocMode;
+        for (ShardResult shard : shards) {
+            if (!shard.clocMode.equals(CLOC_MODE)) {
+                ERR.println("⚠️ 各分片的代码行数统计模式不一致，使用分片 " + shards.get(0).index + " 的模式: "
+                        + (CLOC_MODE.isEmpty() ? "不统计" : CLOC_MODE));
+                break;
+            }
+        }
+
+        // 按相对路径排序的完整列表中的位置合并，失败文件列表的顺序与节点数和遍历顺序无关
+        List<ShardResult.Entry> entries = new ArrayList<>();
+        shards.sort(Comparator.comparingInt(shard -> shard.index));
+        OUT.println("🧩 已合并 " + shards.size() + " 个分片结果:");
+        long longest = 0;
+        long totalMillis = 0;
+        for (ShardResult shard : shards) {
+            entries.addAll(shard.entries());
+            OUT.println("  分片 " + shard.index + "/" + shard.count + ": " + shard.entries().size() + " 个文件，耗时 "
+                    + String.format("%.1f", shard.elapsedMillis / 1000.0) + " 秒");
+            longest = Math.max(longest, shard.elapsedMillis);
+            totalMillis += shard.elapsedMillis;
+        }
+        OUT.println("⏱️ 最慢分片耗时 " + String.format("%.1f", longest / 1000.0) + " 秒，各分片合计 "
+                + String.format("%.1f", totalMillis / 1000.0) + " 秒");
+        entries.sort(Comparator.comparingInt(entry -> entry.order));
+
+        // 分片结果中的路径相对于扫描目录或文件列表的根目录，按本机的 -dir / -file / -root 还原
+        Path base = shardBase().toAbsolutePath().normalize();
+        int successCount = 0;
+        int failCount = 0;
+        long totalBeforeLineCount = 0;
+        long totalAfterLineCount = 0;
+        List<String> failedFiles = new ArrayList<>();
+        for (ShardResult.Entry entry : entries) {
+            if (entry.success) {
+                successCount++;
+            } else {
+                failCount++;
+                failedFiles.add(failedEntry(base.resolve(entry.path).toString(), entry.timedOut));
+            }
+            totalBeforeLineCount += entry.beforeCount;
+            totalAfterLineCount += entry.afterCount;
+        }
+        if (entries.isEmpty()) {
+            OUT.println("⚠️ 未找到需要编译的JS文件");
+            return 0;
+        }
+        printTotals(successCount, failCount, totalBeforeLineCount, totalAfterLineCount);
+        writeErrorFiles(failedFiles);
+        return 0;
+    }
+
+    /**
+     * 解析带单位的时长（ms/s/m，不带单位为秒）
+     * @return 毫秒数，格式错误时返回 -1
+     */
+    private static long parseDuration(String value) {
+        String text = value.trim().toLowerCase();
+        long unit = 1000;
+        if (text.endsWith("ms")) {
+            unit = 1;
+            text = text.substring(0, text.length() - 2);
+        } else if (text.endsWith("s")) {
+            text = text.substring(0, text.length() - 1);
+        } else if (text.endsWith("m")) {
+            unit = 60 * 1000;
+            text = text.substring(0, text.length() - 1);
+        }
+        try {
+            double amount = Double.parseDouble(text.trim());
+            return amount >= 0 ? (long) (amount * unit) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String formatKb(long bytes) {
+        return String.format("%.1f KB", bytes / 1024.0);
+    }
+
+    /**
+     * 监听目录变化，合并一段时间内的连续变化后只重新编译发生变化的文件，直到进程被终止
+     */
+    private static void watch(SourceWatcher watcher) throws IOException, InterruptedException {
+        OUT.println("\n👀 正在监听 " + watcher.directoryCount() + " 个目录的变化（按 Ctrl+C 退出）");
+        while (true) {
+            List<File> changed = watcher.awaitChanges();
+            if (changed.isEmpty()) {
+                continue;
+            }
+            OUT.println("\n🔄 检测到 " + changed.size() + " 个文件发生变化，重新编译");
+            compileFiles(changed::forEach);
+            OUT.println("\n👀 继续监听目录变化...");
         }
     }
 
@@ -151,35 +742,82 @@ public class JsCompiler {
      * 打印帮助信息
      */
     private static void printHelp() {
-        System.out.println("JsCompiler - Closure Compiler 批量编译 JS 并覆盖源文件");
-        System.out.println();
-        System.out.println("参数说明:");
-        System.out.println("  -help, -h, --help      显示帮助信息");
-        System.out.println("  -dir=目录路径          设置要扫描的JS根目录，默认: src/main/resources");
-        System.out.println("  -file=文件列表路径     从文本文件读取JS文件列表进行处理");
-        System.out.println("  -root=根目录路径       配合-file使用，指定文件列表中的相对路径的根目录");
-        System.out.println("  -keywords=关键字1,关键字2,关键字3  设置路径关键字过滤，默认: 无");
-        System.out.println("  -size=文件大小阈值     设置文件大小阈值(KB)，超过该大小的文件才会被处理，默认: 0 (无限制)");
-        System.out.println("  -cloc[=mode]           启用代码行数统计，mode可以是:");
-        System.out.println("                         - after (压缩后) [默认]");
-        System.out.println("                         - before (压缩前)");
-        System.out.println("                         - all (压缩前后都统计)");
-        System.out.println("                         不指定mode时默认为 after");
-        System.out.println();
-        System.out.println("注意: -dir 和 -file 参数不能同时使用");
-        System.out.println();
-        System.out.println("使用示例:");
-        System.out.println("  java -jar closure-compiler-tool-xxx.jar -dir=src/main/resources");
-        System.out.println("  java -jar closure-compiler-tool-xxx.jar -file=filelist.txt -root=/project/root");
-        System.out.println("  java -jar closure-compiler-tool-xxx.jar -dir=src/main/resources -keywords=echarts,chart");
-        System.out.println("  java -jar closure-compiler-tool-xxx.jar -dir=src/main/resources -size=100");
-        System.out.println("  java -jar closure-compiler-tool-xxx.jar -dir=src/main/resources -keywords=echarts -size=50");
-        System.out.println("  java -jar closure-compiler-tool-xxx.jar -dir=src/main/resources -cloc");
-        System.out.println("  java -jar closure-compiler-tool-xxx.jar -dir=src/main/resources -cloc=after");
-        System.out.println("  java -jar closure-compiler-tool-xxx.jar -dir=src/main/resources -cloc=before");
-        System.out.println("  java -jar closure-compiler-tool-xxx.jar -dir=src/main/resources -cloc=all");
-        System.out.println("  java -jar closure-compiler-tool-xxx.jar -dir=src/main/resources -keywords=echarts -cloc=all");
-        System.out.println("  java -jar closure-compiler-tool-xxx.jar -help");
+        OUT.println("JsCompiler - Closure Compiler 批量编译 JS 并覆盖源文件");
+        OUT.println();
+        OUT.println("参数说明:");
+        OUT.println("  -help, -h, --help      显示帮助信息");
+        OUT.println("  -dir=目录路径          设置要扫描的JS根目录，默认: src/main/resources");
+        OUT.println("  -file=文件列表路径     从文本文件读取JS文件列表进行处理");
+        OUT.println("  -root=根目录路径       配合-file使用，指定文件列表中的相对路径的根目录");
+        OUT.println("  -keywords=关键字1,关键字2,关键字3  设置路径关键字过滤，默认: 无");
+        OUT.println("  -size=文件大小阈值     设置文件大小阈值(KB)，超过该大小的文件才会被处理，默认: 0 (无限制)");
+        OUT.println("  -cloc[=mode]           启用代码行数统计，mode可以是:");
+        OUT.println("                         - after (压缩后) [默认]");
+        OUT.println("                         - before (压缩前)");
+        OUT.println("                         - all (压缩前后都统计)");
+        OUT.println("                         不指定mode时默认为 after");
+        OUT.println("  -threads=线程数        设置并行编译的线程数，默认: CPU核数 (" + Runtime.getRuntime().availableProcessors() + ")");
+        OUT.println("  -scanThreads=线程数    设置目录遍历的线程数，大于1时使用 fork/join 并行遍历子目录，默认: 1");
+        OUT.println("  -ioThreads=线程数      设置读取和写入文件的线程数（各自），与编译并行进行，默认: 2");
+        OUT.println("  -readAhead=大小        设置预读源码的内存上限(MB)，超出时暂停读取，默认: 256");
+        OUT.println("  -heapBudget=大小       设置同时编译的文件估算堆内存之和的上限，支持 k/m/g 单位(不带单位为MB)，默认: 最大堆内存的3/4");
+        OUT.println("  -cache[=缓存目录]      启用增量编译缓存，源码和编译配置未变化的文件直接使用缓存结果，默认目录: .jscompiler-cache");
+        OUT.println("  -cacheSize=大小        设置缓存大小上限(MB)，超出时淘汰最久未使用的条目，默认: 512，0 表示不限制");
+        OUT.println("  -manifest[=清单路径]   记录生成文件的指纹，再次运行时跳过未被改动的已压缩文件，默认: .jscompiler-manifest");
+        OUT.println("  -externs=文件1,文件2   设置编译使用的 externs 文件，default 表示 Closure 内置的浏览器 externs，默认: 无");
+        OUT.println("  -report=报告路径       生成性能报告（每个文件各阶段耗时、大小、内存分配），.csv 结尾输出 CSV，否则输出 JSON");
+        OUT.println("  -top=个数              配合-report使用，列出最慢的文件个数，默认: 10");
+        OUT.println("  -passTiming            配合-report使用，统计 Closure Compiler 各个 pass 的耗时（略微增加编译耗时，且不再统计内存分配）");
+        OUT.println("  -precompress[=格式]    为压缩结果生成预压缩旁路文件（如 a.js.gz），与编译并行进行，格式: gzip，默认: gzip");
+        OUT.println("  -dedup[=link]          内容相同的文件只编译一次，其余文件直接写入相同结果；=link 时在同一文件系统内以硬链接输出");
+        OUT.println("  -chunks[=分组方式]     分组合并编译：同组文件由一个 Compiler 一起编译后各自写回，dir(按目录)、list(按-file列表中的 [分组名] 行)，默认: dir");
+        OUT.println("  -sourcemap             为压缩结果生成 Source Map（同目录的 xxx.js.map，内嵌原始源码），并在压缩结果末尾添加 sourceMappingURL 注释");
+        OUT.println("  -timeout=时长          设置单个文件的编译时间预算，超时即放弃该文件的编译，支持 ms/s/m 单位(不带单位为秒)，默认: 不限制；编译过程中协作式检查，解析超大文件等长阶段无法打断，实际耗时可能超出预算");
+        OUT.println("  -onTimeout=处理方式    配合-timeout使用：skip(保持源文件不变并记入 error_files.txt)、whitespace(在同一时间预算的剩余时间内改用 WHITESPACE_ONLY 重新编译，单个文件总耗时仍以 -timeout 为准)，默认: skip");
+        OUT.println("  -shard=K/N             多台机器分片编译：按文件大小均衡地划分为N份，只处理第K份，并写入分片结果");
+        OUT.println("  -shardOut=路径         配合-shard使用，设置分片结果文件路径，默认: shard-K-of-N.txt");
+        OUT.println("  -merge=路径1,路径2     合并各分片结果（文件或包含 shard-*.txt 的目录），输出汇总和 error_files.txt，不编译；error_files.txt 中的路径按本次的 -dir 或 -file/-root 还原");
+        OUT.println("  -watch                 首次编译后持续监听目录变化，只重新编译发生变化的文件（只能配合-dir使用）");
+        OUT.println("  -debounce=毫秒         配合-watch使用，连续变化停止多久后开始编译，默认: 300");
+        OUT.println("  -daemon[=端口]         以守护进程方式常驻，监听本机端口接收编译请求，默认端口: " + CompileDaemon.DEFAULT_PORT + "；访问令牌写入 ~/.jscompiler/daemon-端口.token（仅本用户可读）");
+        OUT.println("  -queue=请求数          配合-daemon使用，设置等待执行的请求队列长度，默认: " + CompileDaemon.DEFAULT_QUEUE);
+        OUT.println("  -client[=端口]         将本次的其余参数发送给守护进程执行，并输出执行结果（需与守护进程为同一用户，以读取访问令牌）");
+        OUT.println("  -stop                  配合-client使用，停止守护进程：立即返回，守护进程不再接受新请求，已排队的请求完成后退出");
+        OUT.println();
+        OUT.println("注意: -dir 和 -file 参数不能同时使用");
+        OUT.println();
+        OUT.println("使用示例:");
+        OUT.println("  java -jar closure-compiler-tool-xxx.jar -dir=src/main/resources");
+        OUT.println("  java -jar closure-compiler-tool-xxx.jar -file=filelist.txt -root=/project/root");
+        OUT.println("  java -jar closure-compiler-tool-xxx.jar -dir=src/main/resources -keywords=echarts,chart");
+        OUT.println("  java -jar closure-compiler-tool-xxx.jar -dir=src/main/resources -size=100");
+        OUT.println("  java -jar closure-compiler-tool-xxx.jar -dir=src/main/resources -keywords=echarts -size=50");
+        OUT.println("  java -jar closure-compiler-tool-xxx.jar -dir=src/main/resources -cloc");
+        OUT.println("  java -jar closure-compiler-tool-xxx.jar -dir=src/main/resources -cloc=after");
+        OUT.println("  java -jar closure-compiler-tool-xxx.jar -dir=src/main/resources -cloc=before");
+        OUT.println("  java -jar closure-compiler-tool-xxx.jar -dir=src/main/resources -cloc=all");
+        OUT.println("  java -jar closure-compiler-tool-xxx.jar -dir=src/main/resources -keywords=echarts -cloc=all");
+        OUT.println("  java -jar closure-compiler-tool-xxx.jar -dir=src/main/resources -threads=8");
+        OUT.println("  java -jar closure-compiler-tool-xxx.jar -dir=src/main/resources -threads=8 -scanThreads=4");
+        OUT.println("  java -Xmx3g -jar closure-compiler-tool-xxx.jar -dir=src/main/resources -threads=8 -heapBudget=2g");
+        OUT.println("  java -jar closure-compiler-tool-xxx.jar -dir=src/main/resources -cache -cacheSize=1024");
+        OUT.println("  java -jar closure-compiler-tool-xxx.jar -dir=src/main/resources -manifest");
+        OUT.println("  java -jar closure-compiler-tool-xxx.jar -dir=src/main/resources -externs=default,externs.js");
+        OUT.println("  java -jar closure-compiler-tool-xxx.jar -dir=src/main/resources -report=report.json -top=20 -passTiming");
+        OUT.println("  java -jar closure-compiler-tool-xxx.jar -dir=src/main/resources -report=report.csv");
+        OUT.println("  java -jar closure-compiler-tool-xxx.jar -dir=src/main/resources -precompress=gzip -cloc=all");
+        OUT.println("  java -jar closure-compiler-tool-xxx.jar -dir=src/main/resources -dedup=link");
+        OUT.println("  java -jar closure-compiler-tool-xxx.jar -dir=src/main/resources -chunks");
+        OUT.println("  java -jar closure-compiler-tool-xxx.jar -file=bundles.txt -root=/project/root -chunks=list");
+        OUT.println("  java -jar closure-compiler-tool-xxx.jar -dir=src/main/resources -sourcemap -cache");
+        OUT.println("  java -jar closure-compiler-tool-xxx.jar -dir=src/main/resources -timeout=30s -onTimeout=whitespace");
+        OUT.println("  java -jar closure-compiler-tool-xxx.jar -dir=src/main/resources -shard=2/4 -cloc=all");
+        OUT.println("  java -jar closure-compiler-tool-xxx.jar -merge=shards/ -dir=src/main/resources");
+        OUT.println("  java -jar closure-compiler-tool-xxx.jar -dir=src/main/resources -watch -debounce=500");
+        OUT.println("  java -jar closure-compiler-tool-xxx.jar -daemon");
+        OUT.println("  java -jar closure-compiler-tool-xxx.jar -client -dir=src/main/resources -cloc");
+        OUT.println("  java -jar closure-compiler-tool-xxx.jar -client -stop");
+        OUT.println("  java -jar closure-compiler-tool-xxx.jar -help");
     }
 
     /**
@@ -191,8 +829,32 @@ public class JsCompiler {
      * -file=文件列表路径  // 从文本文件读取JS文件列表进行处理
      * -root=根目录路径  // 配合-file使用，指定文件列表中的相对路径的根目录
      * -cloc  // 启用代码行数统计模式
+     * -threads=线程数  // 设置并行编译的线程数
+     * -scanThreads=线程数  // 设置目录遍历的线程数
+     * -ioThreads=线程数  // 设置读取和写入文件的线程数
+     * -readAhead=大小  // 设置预读源码的内存上限(MB)
+     * -heapBudget=大小  // 设置同时编译的文件估算堆内存之和的上限
+     * -cache[=缓存目录]  // 启用增量编译缓存
+     * -cacheSize=大小  // 设置缓存大小上限(MB)
+     * -manifest[=清单路径]  // 启用输出清单
+     * -externs=文件1,文件2  // 设置编译使用的 externs 文件
+     * -report=报告路径  // 生成性能报告
+     * -top=个数  // 设置报告中列出最慢文件的个数
+     * -passTiming  // 统计 Closure Compiler 各个 pass 的耗时
+     * -precompress[=格式]  // 生成预压缩旁路文件
+     * -dedup[=link]  // 内容相同的文件只编译一次
+     * -chunks[=分组方式]  // 分组合并编译
+     * -sourcemap  // 生成 Source Map
+     * -timeout=时长  // 设置单个文件的编译时间预算
+     * -onTimeout=处理方式  // 设置编译超时后的处理方式
+     * -shard=K/N  // 只处理N个分片中的第K个
+     * -shardOut=路径  // 设置分片结果文件路径
+     * -merge=路径1,路径2  // 合并各分片结果
+     * -watch  // 持续监听目录变化
+     * -debounce=毫秒  // 设置监听模式下合并连续变化的等待时间
+     * @return 参数是否有效
      */
-    private static void parseArguments(String[] args) {
+    private static boolean parseArguments(String[] args) {
         boolean hasDir = false;
         boolean hasFile = false;
         
@@ -209,7 +871,7 @@ public class JsCompiler {
                 try {
                     FILE_SIZE_THRESHOLD = Long.parseLong(arg.substring(6)); // 提取文件大小阈值
                 } catch (NumberFormatException e) {
-                    System.err.println("⚠️ 文件大小阈值格式错误，使用默认值0");
+                    ERR.println("⚠️ 文件大小阈值格式错误，使用默认值0");
                     FILE_SIZE_THRESHOLD = 0;
                 }
             } else if (arg.startsWith("-file=")) {
@@ -226,194 +888,360 @@ public class JsCompiler {
                     if (mode.equals("after") || mode.equals("before") || mode.equals("all")) {
                         CLOC_MODE = mode;
                     } else {
-                        System.err.println("⚠️ 无效的 -cloc 模式: " + mode + "，使用默认值 after");
+                        ERR.println("⚠️ 无效的 -cloc 模式: " + mode + "，使用默认值 after");
                         CLOC_MODE = "after";
                     }
                 }
+            } else if (arg.startsWith("-threads=")) {
+                try {
+                    THREADS = Integer.parseInt(arg.substring(9)); // 提取线程数
+                } catch (NumberFormatException e) {
+                    THREADS = 0;
+                }
+                if (THREADS <= 0) {
+                    THREADS = Runtime.getRuntime().availableProcessors();
+                    ERR.println("⚠️ 线程数格式错误，使用默认值" + THREADS);
+                }
+            } else if (arg.startsWith("-scanThreads=")) {
+                try {
+                    SCAN_THREADS = Integer.parseInt(arg.substring(13)); // 提取遍历线程数
+                } catch (NumberFormatException e) {
+                    SCAN_THREADS = 0;
+                }
+                if (SCAN_THREADS <= 0) {
+                    ERR.println("⚠️ 遍历线程数格式错误，使用默认值1");
+                    SCAN_THREADS = 1;
+                }
+            } else if (arg.startsWith("-ioThreads=")) {
+                try {
+                    IO_THREADS = Integer.parseInt(arg.substring(11)); // 提取读写线程数
+                } catch (NumberFormatException e) {
+                    IO_THREADS = 0;
+                }
+                if (IO_THREADS <= 0) {
+                    ERR.println("⚠️ 读写线程数格式错误，使用默认值2");
+                    IO_THREADS = 2;
+                }
+            } else if (arg.startsWith("-readAhead=")) {
+                try {
+                    READ_AHEAD_MB = Long.parseLong(arg.substring(11)); // 提取预读内存上限
+                } catch (NumberFormatException e) {
+                    READ_AHEAD_MB = 0;
+                }
+                if (READ_AHEAD_MB <= 0) {
+                    ERR.println("⚠️ 预读内存上限格式错误，使用默认值256");
+                    READ_AHEAD_MB = 256;
+                }
+            } else if (arg.startsWith("-heapBudget=")) {
+                HEAP_BUDGET = parseByteSize(arg.substring(12)); // 提取堆预算
+                if (HEAP_BUDGET <= 0) {
+                    ERR.println("⚠️ 堆预算格式错误，使用默认值（最大堆内存的3/4）");
+                    HEAP_BUDGET = 0;
+                }
+            } else if (arg.startsWith("-cacheSize=")) {
+                try {
+                    CACHE_SIZE_MB = Long.parseLong(arg.substring(11)); // 提取缓存大小上限
+                } catch (NumberFormatException e) {
+                    ERR.println("⚠️ 缓存大小格式错误，使用默认值512");
+                    CACHE_SIZE_MB = 512;
+                }
+            } else if (arg.equals("-cache")) {
+                CACHE_DIR = ".jscompiler-cache"; // 默认缓存目录（当前工作目录下）
+            } else if (arg.startsWith("-cache=")) {
+                CACHE_DIR = arg.substring(7); // 提取缓存目录
+            } else if (arg.equals("-manifest")) {
+                MANIFEST_FILE = ".jscompiler-manifest"; // 默认清单文件（当前工作目录下）
+            } else if (arg.startsWith("-manifest=")) {
+                MANIFEST_FILE = arg.substring(10); // 提取清单路径
+            } else if (arg.startsWith("-externs=")) {
+                EXTERNS_SPEC = arg.substring(9); // 提取 externs 列表
+            } else if (arg.startsWith("-report=")) {
+                REPORT_FILE = arg.substring(8); // 提取报告路径
+            } else if (arg.startsWith("-top=")) {
+                try {
+                    REPORT_TOP = Integer.parseInt(arg.substring(5)); // 提取最慢文件个数
+                } catch (NumberFormatException e) {
+                    REPORT_TOP = -1;
+                }
+                if (REPORT_TOP < 0) {
+                    ERR.println("⚠️ 最慢文件个数格式错误，使用默认值10");
+                    REPORT_TOP = 10;
+                }
+            } else if (arg.equals("-passTiming")) {
+                PASS_TIMING = true;
+            } else if (arg.equals("-precompress")) {
+                PRECOMPRESS = new ArrayList<>(Collections.singletonList(Precompressor.Format.GZIP)); // 默认 gzip
+            } else if (arg.startsWith("-precompress=")) {
+                PRECOMPRESS = new ArrayList<>();
+                for (String name : arg.substring(13).split(",")) { // 提取压缩格式
+                    Precompressor.Format format = Precompressor.Format.of(name.trim());
+                    if (format == null) {
+                        ERR.println("⚠️ 不支持的预压缩格式: " + name.trim() + "（当前仅支持 gzip），已忽略");
+                    } else if (!PRECOMPRESS.contains(format)) {
+                        PRECOMPRESS.add(format);
+                    }
+                }
+            } else if (arg.equals("-dedup")) {
+                DEDUP_MODE = "copy";
+            } else if (arg.startsWith("-dedup=")) {
+                DEDUP_MODE = arg.substring(7).toLowerCase(); // 提取输出方式
+                if (!DEDUP_MODE.equals("copy") && !DEDUP_MODE.equals("link")) {
+                    ERR.println("⚠️ 重复文件输出方式错误，使用默认值copy");
+                    DEDUP_MODE = "copy";
+                }
+            } else if (arg.equals("-chunks")) {
+                CHUNK_MODE = "dir"; // 默认按目录分组
+            } else if (arg.startsWith("-chunks=")) {
+                CHUNK_MODE = arg.substring(8).toLowerCase(); // 提取分组方式
+                if (!CHUNK_MODE.equals("dir") && !CHUNK_MODE.equals("list")) {
+                    ERR.println("⚠️ 分组方式错误，使用默认值dir");
+                    CHUNK_MODE = "dir";
+                }
+            } else if (arg.equals("-sourcemap")) {
+                SOURCE_MAP = true;
+            } else if (arg.startsWith("-timeout=")) {
+                TIMEOUT_MS = parseDuration(arg.substring(9)); // 提取时间预算
+                if (TIMEOUT_MS < 0) {
+                    ERR.println("⚠️ 编译时间预算格式错误，不限制编译时间");
+                    TIMEOUT_MS = 0;
+                }
+            } else if (arg.startsWith("-onTimeout=")) {
+                String action = arg.substring(11).toLowerCase(); // 提取超时处理方式
+                if (action.equals("whitespace")) {
+                    TIMEOUT_FALLBACK = true;
+                } else if (action.equals("skip")) {
+                    TIMEOUT_FALLBACK = false;
+                } else {
+                    ERR.println("⚠️ 超时处理方式错误，使用默认值skip");
+                    TIMEOUT_FALLBACK = false;
+                }
+            } else if (arg.startsWith("-shard=")) {
+                SHARD = ShardPlan.parse(arg.substring(7)); // 提取分片序号和分片总数
+                if (SHARD == null) {
+                    // 分片参数错误时不能退回到处理全部文件，否则每个节点都会处理全部文件
+                    ERR.println("❌ 错误：分片参数格式错误，应为 K/N（1 ≤ K ≤ N）: " + arg.substring(7));
+                    return false;
+                }
+            } else if (arg.startsWith("-shardOut=")) {
+                SHARD_OUT = arg.substring(10); // 提取分片结果文件路径
+            } else if (arg.startsWith("-merge=")) {
+                MERGE_SPEC = arg.substring(7); // 提取要合并的分片结果
+            } else if (arg.equals("-watch")) {
+                WATCH = true;
+            } else if (arg.startsWith("-debounce=")) {
+                try {
+                    DEBOUNCE_MS = Long.parseLong(arg.substring(10)); // 提取防抖时间
+                } catch (NumberFormatException e) {
+                    DEBOUNCE_MS = 0;
+                }
+                if (DEBOUNCE_MS <= 0) {
+                    ERR.println("⚠️ 防抖时间格式错误，使用默认值300");
+                    DEBOUNCE_MS = 300;
+                }
             }
         }
         if (hasDir && hasFile) {
-            System.err.println("❌ 错误：-dir 和 -file 参数不能同时使用");
+            ERR.println("❌ 错误：-dir 和 -file 参数不能同时使用");
             printHelp();
-            System.exit(1);
+            return false;
+        }
+        if (WATCH && hasFile) {
+            ERR.println("❌ 错误：-watch 参数只能配合 -dir 使用");
+            return false;
+        }
+        if (!CHUNK_MODE.isEmpty()) {
+            if (CHUNK_MODE.equals("list") && !hasFile) {
+                ERR.println("❌ 错误：-chunks=list 需要配合 -file 使用");
+                return false;
+            }
+            if (WATCH || SHARD != null) {
+                // 监听模式和分片只处理部分文件，会拆散分组
+                ERR.println("❌ 错误：-chunks 不能与 -watch 或 -shard 同时使用");
+                return false;
+            }
+            if (!CACHE_DIR.isEmpty() || !DEDUP_MODE.isEmpty()) {
+                ERR.println("⚠️ 分组合并编译时不使用编译缓存和重复文件检测，已忽略 -cache / -dedup");
+                CACHE_DIR = "";
+                DEDUP_MODE = "";
+            }
+        }
+        if (SOURCE_MAP && !DEDUP_MODE.isEmpty()) {
+            // 压缩结果末尾的 sourceMappingURL 注释和 Source Map 都含有文件名，内容相同的文件结果也不同
+            ERR.println("⚠️ 生成 Source Map 时不使用重复文件检测，已忽略 -dedup");
+            DEDUP_MODE = "";
+        }
+        if (WATCH && SHARD != null) {
+            ERR.println("❌ 错误：-watch 和 -shard 参数不能同时使用");
+            return false;
+        }
+        if (!MERGE_SPEC.isEmpty()) {
+            OUT.println("合并分片结果: " + MERGE_SPEC);
+            return true;
         }
         
         // 输出配置信息
         if (!FILE_LIST.isEmpty()) {
-            System.out.println("文件列表: " + FILE_LIST);
+            OUT.println("文件列表: " + FILE_LIST);
             if (!ROOT_DIR.isEmpty()) {
-                System.out.println("根目录: " + ROOT_DIR);
+                OUT.println("根目录: " + ROOT_DIR);
             } else {
-                System.out.println("根目录: 未指定（使用相对路径）");
+                OUT.println("根目录: 未指定（使用相对路径）");
             }
         } else {
-            System.out.println("扫描目录: " + TARGET_DIR);
+            OUT.println("扫描目录: " + TARGET_DIR);
         }
         if (KEYWORDS.length > 0) {
-            System.out.println("关键字过滤: " + String.join(", ", KEYWORDS));
+            OUT.println("关键字过滤: " + String.join(", ", KEYWORDS));
         } else {
-            System.out.println("关键字过滤: 无");
+            OUT.println("关键字过滤: 无");
         }
         if (FILE_SIZE_THRESHOLD > 0) {
-            System.out.println("文件大小阈值: " + FILE_SIZE_THRESHOLD + " KB");
+            OUT.println("文件大小阈值: " + FILE_SIZE_THRESHOLD + " KB");
         } else {
-            System.out.println("文件大小阈值: 无");
+            OUT.println("文件大小阈值: 无");
         }
         if (!CLOC_MODE.isEmpty()) {
-            System.out.println("代码行数统计: " + CLOC_MODE + "模式");
+            OUT.println("代码行数统计: " + CLOC_MODE + "模式");
+        }
+        OUT.println("并行线程数: " + THREADS);
+        if (SCAN_THREADS > 1) {
+            OUT.println("目录遍历线程数: " + SCAN_THREADS);
+        }
+        OUT.println("读写线程数: " + IO_THREADS + "，预读上限: " + READ_AHEAD_MB + " MB");
+        OUT.println("编译堆预算: " + heapBudget() / (1024 * 1024) + " MB" + (HEAP_BUDGET > 0 ? "" : "（最大堆内存的3/4）"));
+        if (!CACHE_DIR.isEmpty()) {
+            OUT.println("编译缓存: " + CACHE_DIR + "（上限 " + (CACHE_SIZE_MB > 0 ? CACHE_SIZE_MB + " MB" : "无") + "）");
+        }
+        if (!MANIFEST_FILE.isEmpty()) {
+            OUT.println("输出清单: " + MANIFEST_FILE);
+        }
+        if (!EXTERNS_SPEC.isEmpty()) {
+            OUT.println("externs: " + EXTERNS_SPEC);
         }
+        if (!REPORT_FILE.isEmpty()) {
+            OUT.println("性能报告: " + REPORT_FILE + (PASS_TIMING ? "（包含 pass 耗时）" : ""));
+        }
+        if (!PRECOMPRESS.isEmpty()) {
+            List<String> names = new ArrayList<>();
+            PRECOMPRESS.forEach(format -> names.add(format.name));
+            OUT.println("预压缩: " + String.join(", ", names));
+        }
+        if (!DEDUP_MODE.isEmpty()) {
+            OUT.println("重复文件检测: 开启（" + (DEDUP_MODE.equals("link") ? "硬链接输出" : "写入相同内容") + "）");
+        }
+        if (!CHUNK_MODE.isEmpty()) {
+            OUT.println("分组合并编译: " + (CHUNK_MODE.equals("list") ? "按文件列表中的分组" : "按目录"));
+        }
+        if (SOURCE_MAP) {
+            OUT.println("Source Map: 开启");
+        }
+        if (TIMEOUT_MS > 0) {
+            OUT.println("编译时间预算: " + CompileEngine.formatMillis(TIMEOUT_MS) + "（超时后" + (TIMEOUT_FALLBACK ? "改用 WHITESPACE_ONLY 重新编译" : "保持源文件不变") + "）");
+        }
+        if (SHARD != null) {
+            OUT.println("分片: " + SHARD.index + "/" + SHARD.count);
+        }
+        if (WATCH) {
+            OUT.println("监听模式: 开启（防抖 " + DEBOUNCE_MS + " ms）");
+        }
+        return true;
     }
 
     /**
-     * 扫描指定目录下所有JS文件（递归），排除指定目录，并根据关键字和文件大小过滤
+     * 解析带单位的大小（k/m/g，不带单位为MB）
+     * @return 字节数，格式错误时返回 -1
      */
-    private static List<File> scanJsFiles(String rootDir) throws IOException {
-        List<File> jsFiles = new ArrayList<>();
-        Path rootPath = Paths.get(rootDir);
-
-        // 递归遍历目录
-        Files.walkFileTree(rootPath, new SimpleFileVisitor<Path>() {
-            @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                // 过滤：仅处理.js文件，排除指定目录
-                String filePath = file.toString();
-                if (filePath.endsWith(".js") && !filePath.contains(IGNORE_DIR)) {
-                    File jsFile = file.toFile();
-                    // 如果没有设置关键字或文件路径包含关键字，且文件大小超过阈值，则添加到处理列表
-                    if ((KEYWORDS.length == 0 || containsKeywordInPath(filePath)) && 
-                        (FILE_SIZE_THRESHOLD == 0 || jsFile.length() > FILE_SIZE_THRESHOLD * 1024)) {
-                        jsFiles.add(jsFile);
-                    }
-                }
-                return FileVisitResult.CONTINUE;
-            }
+    private static long parseByteSize(String text) {
+        String value = text.trim().toLowerCase();
+        long unit = 1024 * 1024;
+        if (value.endsWith("k") || value.endsWith("m") || value.endsWith("g")) {
+            char suffix = value.charAt(value.length() - 1);
+            unit = suffix == 'k' ? 1024 : suffix == 'm' ? 1024 * 1024 : 1024L * 1024 * 1024;
+            value = value.substring(0, value.length() - 1);
+        }
+        try {
+            return Long.parseLong(value) * unit;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
 
-            @Override
-            public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
-                System.err.println("⚠️ 访问文件失败：" + file + "，原因：" + exc.getMessage());
-                return FileVisitResult.CONTINUE; // 跳过错误文件，继续处理
-            }
-        });
-        return jsFiles;
+    /**
+     * 本次运行的编译堆预算（字节）
+     */
+    private static long heapBudget() {
+        return HEAP_BUDGET > 0 ? HEAP_BUDGET : Runtime.getRuntime().maxMemory() / 4 * 3;
     }
 
     /**
-     * 检查文件路径是否包含指定关键字
+     * 按工具的默认编译配置创建编译选项
+     * Closure 编译时会改写传入的 CompilerOptions，且不支持复制，所以每个 Compiler 使用一个新实例
      */
-    private static boolean containsKeywordInPath(String filePath) {
-        for (String keyword : KEYWORDS) {
-            if (filePath.contains(keyword)) {
-                return true;
-            }
+    static CompilerOptions newCompilerOptions() {
+        CompileConfig config = CompileConfig.builder().build();
+        return config.newCompilerOptions(config.compilationLevel());
+    }
+
+    /**
+     * 预热：用一段示例代码执行几次完整编译，提前完成 Closure Compiler 的类加载、静态初始化和 JIT 编译
+     * 供守护进程启动时调用，使第一个请求也能以热身后的速度执行
+     */
+    static void warmUp() {
+        String code = "function sum(list){var total=0;for(var i=0;i<list.length;i++){total+=list[i]}return total}"
+                + "var Point=function(x,y){this.x=x;this.y=y};Point.prototype.len=function(){return Math.sqrt(this.x*this.x+this.y*this.y)};"
+                + "console.log(sum([1,2,3]),new Point(3,4).len());";
+        for (int i = 0; i < 3; i++) {
+            Compiler compiler = new Compiler(new PrintStream(new ByteArrayOutputStream()));
+            compiler.compile(SourceFile.fromCode("externs.js", ""), SourceFile.fromCode("warmup.js", code), newCompilerOptions());
+            compiler.toSource();
         }
-        return false;
     }
 
     /**
-     * 编译单个JS文件到临时文件，验证后覆盖源文件
-     * @return 返回包含编译前后行数的结果，不管编译是否成功都返回行数统计（编译失败时 afterCount 为 0）
+     * 把解析后的参数转换为编译配置，相对路径按当前工作目录解析
      */
-    private static LineCountResult compileAndOverwrite(File srcFile) {
-        System.out.println("正在处理：" + srcFile);
-        
-        long beforeLineCount = 0;
-        long afterLineCount = 0;
-        boolean compilationSuccess = false;
-        
-        try {
-            // 如果需要统计压缩前的行数，先进行统计
-            if (!CLOC_MODE.isEmpty() && (CLOC_MODE.equals("before") || CLOC_MODE.equals("all"))) {
-                beforeLineCount = countLinesOfCode(srcFile);
+    private static CompileConfig buildConfig() {
+        CompileConfig.Builder builder = CompileConfig.builder()
+                .keywords(KEYWORDS)
+                .minFileSize(FILE_SIZE_THRESHOLD * 1024)
+                .countLines(CLOC_MODE.equals("before") || CLOC_MODE.equals("all"), CLOC_MODE.equals("after") || CLOC_MODE.equals("all"))
+                .threads(THREADS)
+                .scanThreads(SCAN_THREADS)
+                .ioThreads(IO_THREADS)
+                .readAheadBytes(READ_AHEAD_MB * 1024 * 1024)
+                .passTiming(PASS_TIMING)
+                .dedup(!DEDUP_MODE.isEmpty(), DEDUP_MODE.equals("link"))
+                .sourceMap(SOURCE_MAP)
+                .timeout(TIMEOUT_MS, TIMEOUT_FALLBACK)
+                .log(OUT, ERR);
+        if (HEAP_BUDGET > 0) {
+            builder.heapBudgetBytes(HEAP_BUDGET);
+        }
+        if (!CACHE_DIR.isEmpty()) {
+            builder.cache(resolvePath(CACHE_DIR), CACHE_SIZE_MB * 1024 * 1024);
+        }
+        // -externs：逗号分隔，default 表示内置浏览器 externs
+        boolean includeBuiltin = false;
+        List<Path> externs = new ArrayList<>();
+        for (String item : EXTERNS_SPEC.split(",")) {
+            item = item.trim();
+            if (item.isEmpty()) {
+                continue;
             }
-            
-            // 步骤1：创建临时文件（避免读写冲突）
-            File tempFile = File.createTempFile(
-                    "js_compile_" + UUID.randomUUID().toString().substring(0, 8),
-                    ".tmp.js"
-            );
-            tempFile.deleteOnExit(); // JVM退出时自动删除临时文件
-
-            // 2. 读取源文件为SourceFile（新版核心API）
-            SourceFile inputFile = SourceFile.fromFile(srcFile.getAbsolutePath());
-
-            // 3. 配置编译选项
-            CompilerOptions options = new CompilerOptions();
-            COMPILE_LEVEL.setOptionsForCompilationLevel(options);
-            options.setLanguageIn(INPUT_LANG);
-            options.setLanguageOut(OUTPUT_LANG);
-
-            // 步骤4：执行编译（输出到临时文件）
-            // 4. 执行编译
-            SourceFile extern = SourceFile.fromCode("externs.js", "");
-            Compiler compiler = new Compiler(System.out);
-            Result result = compiler.compile(
-                    extern,
-                    inputFile,
-                    options
-            );
-
-            // 5. 校验编译结果
-            if (!result.success) {
-                System.err.println("❌ 编译失败：" + srcFile.getPath());
-                compiler.getErrors().forEach(err -> System.err.println("   → " + err));
+            if (item.equals(ExternsSet.BUILTIN)) {
+                includeBuiltin = true;
             } else {
-                // 6. 将编译结果写入临时文件
-                try (Writer writer = new FileWriter(tempFile)) {
-                    writer.write(compiler.toSource());
-                    writer.flush();
-                }
-
-                // 7. 验证临时文件非空（避免空文件覆盖源文件）
-                if (tempFile.length() == 0) {
-                    System.err.println("❌ 编译结果为空：" + srcFile.getPath());
-                } else {
-                    // 8. 覆盖源文件（先删原文件，再移动临时文件）
-                    if (!srcFile.delete()) {
-                        System.err.println("❌ 源文件被占用，无法删除：" + srcFile.getPath());
-                    } else if (!tempFile.renameTo(srcFile)) {
-                        System.err.println("❌ 临时文件移动失败：" + srcFile.getPath());
-                    } else {
-                        compilationSuccess = true;
-                        System.out.println("✅ 成功覆盖：" + srcFile.getPath());
-                    }
-                }
-            }
-            
-            // 9. 无论编译是否成功，如果需要统计压缩后的行数，都进行统计
-            // 编译成功时统计压缩后文件的行数，失败时统计原文件的行数
-            if (!CLOC_MODE.isEmpty() && (CLOC_MODE.equals("after") || CLOC_MODE.equals("all"))) {
-                if (compilationSuccess) {
-                    // 编译成功，统计压缩后文件的行数
-                    afterLineCount = countLinesOfCode(srcFile);
-                } else {
-                    // 编译失败，统计原文件的行数
-                    afterLineCount = countLinesOfCode(srcFile);
-                }
-            }
-            
-            // 返回行数统计结果（不管编译是否成功）
-            return new LineCountResult(beforeLineCount, afterLineCount, compilationSuccess);
-
-        } catch (Exception e) {
-            System.err.println("❌ 处理文件失败：" + srcFile.getPath() + "，原因：" + e.getMessage());
-            e.printStackTrace();
-            
-            // 即使发生异常，如果需要统计行数，也尽量进行统计
-            try {
-                if (!CLOC_MODE.isEmpty() && (CLOC_MODE.equals("before") || CLOC_MODE.equals("all"))) {
-                    if (beforeLineCount == 0) {
-                        beforeLineCount = countLinesOfCode(srcFile);
-                    }
-                }
-                if (!CLOC_MODE.isEmpty() && (CLOC_MODE.equals("after") || CLOC_MODE.equals("all"))) {
-                    afterLineCount = countLinesOfCode(srcFile);
-                }
-                return new LineCountResult(beforeLineCount, afterLineCount, false);
-            } catch (Exception ex) {
-                System.err.println("⚠️ 统计行数时出错：" + ex.getMessage());
-                return new LineCountResult(beforeLineCount, afterLineCount, false);
+                externs.add(resolvePath(item));
             }
         }
+        return builder.externs(includeBuiltin, externs).build();
+    }
+
+    /**
+     * 扫描指定目录下所有JS文件，每找到一个符合条件的文件立即交给 sink
+     */
+    static void scanJsFiles(String rootDir, Consumer<File> sink) throws IOException {
+        ENGINE.newScanner(MANIFEST, ERR).scan(resolvePath(rootDir), sink);
     }
 
     /**
@@ -421,19 +1249,43 @@ public class JsCompiler {
      */
     private static List<File> readJsFilesFromFileList(String fileListPath, String rootDir) throws IOException {
         List<File> jsFiles = new ArrayList<>();
-        Path listPath = Paths.get(fileListPath);
-        Path rootPath = rootDir.isEmpty() ? listPath.getParent() : Paths.get(rootDir);
+        readJsFileGroups(fileListPath, rootDir).values().forEach(jsFiles::addAll);
+        return jsFiles;
+    }
+
+    /**
+     * 从文件列表读取JS文件，并按 [分组名] 行分组（第一个分组名之前的文件属于以文件列表路径命名的分组）
+     * @return 分组名 → 该组的文件，按文件列表中的顺序
+     */
+    private static Map<String, List<File>> readJsFileGroups(String fileListPath, String rootDir) throws IOException {
+        Map<String, List<File>> groups = new LinkedHashMap<>();
+        List<File> jsFiles = new ArrayList<>();
+        groups.put(fileListPath, jsFiles);
+        Path listPath = resolvePath(fileListPath);
+        Path rootPath = rootDir.isEmpty() ? listPath.getParent() : resolvePath(rootDir);
         
-        System.out.println("正在从文件列表读取JS文件: " + fileListPath);
-        System.out.println("根目录: " + rootPath.toString());
+        OUT.println("正在从文件列表读取JS文件: " + fileListPath);
+        OUT.println("根目录: " + rootPath.toString());
         
         // 读取文件列表
+        KeywordMatcher keywordMatcher = KeywordMatcher.of(KEYWORDS);
         List<String> filePaths = Files.readAllLines(listPath);
         for (String filePath : filePaths) {
+            // error_files.txt 中制表符之后是失败原因
+            int tab = filePath.indexOf('\t');
+            if (tab >= 0) {
+                filePath = filePath.substring(0, tab);
+            }
             // 跳过空行和注释行
             if (filePath.trim().isEmpty() || filePath.trim().startsWith("#")) {
                 continue;
             }
+            // 分组名（配合 -chunks=list 使用），之后的文件属于该组
+            String line = filePath.trim();
+            if (line.startsWith("[") && line.endsWith("]")) {
+                jsFiles = groups.computeIfAbsent(line.substring(1, line.length() - 1).trim(), k -> new ArrayList<>());
+                continue;
+            }
             String relativeFilePath = filePath.trim().replaceFirst("^/", "").replaceFirst("^\\\\", "");
             // 构造完整路径
             Path fullPath = rootPath.resolve(relativeFilePath.trim());
@@ -442,58 +1294,24 @@ public class JsCompiler {
             // 检查文件是否存在且是JS文件
             if (jsFile.exists() && jsFile.isFile() && jsFile.getName().endsWith(".js")) {
                 // 应用关键字和文件大小过滤条件
-                if ((KEYWORDS.length == 0 || containsKeywordInPath(filePath)) && 
+                if ((keywordMatcher == null || keywordMatcher.matches(filePath)) && 
                     (FILE_SIZE_THRESHOLD == 0 || jsFile.length() > FILE_SIZE_THRESHOLD * 1024)) {
-                    jsFiles.add(jsFile);
+                    // 与输出清单一致的文件已经是压缩结果，直接跳过
+                    if (MANIFEST == null || !MANIFEST.isUnchanged(fullPath, Files.readAttributes(fullPath, BasicFileAttributes.class))) {
+                        jsFiles.add(jsFile);
+                    }
                 }
             } else {
-                System.err.println("⚠️ 文件不存在或不是JS文件: " + fullPath);
+                ERR.println("⚠️ 文件不存在或不是JS文件: " + fullPath);
             }
         }
-        return jsFiles;
+        return groups;
     }
 
     /**
-     * 统计文件的代码行数（排除空行和注释）
+     * 统计文件的代码行数（排除空行和注释），以流式方式读取，不把整个文件按行拆成字符串
      */
-    private static long countLinesOfCode(File file) throws IOException {
-        long codeLines = 0;
-        boolean inMultiLineComment = false;
-        
-        List<String> lines = Files.readAllLines(file.toPath());
-        for (String line : lines) {
-            String trimmedLine = line.trim();
-            
-            // 跳过空行
-            if (trimmedLine.isEmpty()) {
-                continue;
-            }
-            
-            // 处理多行注释 /* ... */
-            if (inMultiLineComment) {
-                if (trimmedLine.contains("*/")) {
-                    inMultiLineComment = false;
-                }
-                continue;
-            }
-            
-            if (trimmedLine.contains("/*")) {
-                inMultiLineComment = true;
-                if (trimmedLine.contains("*/")) {
-                    inMultiLineComment = false;
-                }
-                continue;
-            }
-            
-            // 跳过单行注释 //
-            if (trimmedLine.startsWith("//")) {
-                continue;
-            }
-            
-            // 计数代码行
-            codeLines++;
-        }
-        
-        return codeLines;
+    static long countLinesOfCode(File file) throws IOException {
+        return LineCounter.count(file.toPath());
     }
-}
\ No newline at end of file
+}
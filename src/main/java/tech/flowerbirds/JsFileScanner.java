@@ -0,0 +1,163 @@
+package tech.flowerbirds;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * JS 文件扫描器：先过滤再访问
+ * - 排除目录在进入目录前整体剪掉，不再逐个访问其中的文件
+ * - 所有关键字一次扫描匹配（见 KeywordMatcher）
+ * - 文件大小直接取遍历时已获得的属性，不再额外 stat
+ * - 可选使用 fork/join 并行遍历子目录
+ * 每找到一个文件立即交给回调，编译可以在扫描结束前开始
+ */
+final class JsFileScanner {
+
+    private final String ignoreDir;          // 路径中包含该字符串的目录和文件被排除（统一使用 / 分隔）
+    private final KeywordMatcher keywords;   // 关键字过滤，null 表示不过滤
+    private final long minSizeBytes;         // 文件大小需超过该值才处理，0 表示不过滤
+    private final OutputManifest manifest;   // 输出清单，null 表示不启用
+    private final int threads;               // 遍历线程数，1 表示串行遍历
+    private final PrintStream err;
+
+    JsFileScanner(String ignoreDir, KeywordMatcher keywords, long minSizeBytes,
+                  OutputManifest manifest, int threads, PrintStream err) {
+        this.ignoreDir = ignoreDir;
+        this.keywords = keywords;
+        this.minSizeBytes = minSizeBytes;
+        this.manifest = manifest;
+        this.threads = Math.max(1, threads);
+        this.err = err;
+    }
+
+    /**
+     * 扫描目录（递归），符合条件的文件交给 sink；并行遍历时 sink 会被多个线程同时调用
+     */
+    void scan(Path root, Consumer<File> sink) throws IOException {
+        if (threads == 1) {
+            walkSerial(root, sink);
+            return;
+        }
+        BasicFileAttributes rootAttrs = Files.readAttributes(root, BasicFileAttributes.class);
+        if (!rootAttrs.isDirectory()) {
+            visitFile(root, rootAttrs, sink);
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new DirectoryTask(root, sink));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void walkSerial(Path root, Consumer<File> sink) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                // 排除目录下的所有文件路径都包含排除目录，直接跳过整棵子树
+                return isIgnored(dir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                JsFileScanner.this.visitFile(file, attrs, sink);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                err.println("⚠️ 访问文件失败：" + file + "，原因：" + exc.getMessage());
+                return FileVisitResult.CONTINUE; // 跳过错误文件，继续处理
+            }
+        });
+    }
+
+    private void visitFile(Path file, BasicFileAttributes attrs, Consumer<File> sink) {
+        if (accepts(file, attrs)) {
+            sink.accept(file.toFile());
+        }
+    }
+
+    /**
+     * 判断单个文件是否需要处理（监听模式下也用于过滤变化的文件）
+     * 按开销从小到大依次过滤：扩展名、排除目录、关键字、文件大小，最后才查输出清单
+     */
+    boolean accepts(Path file, BasicFileAttributes attrs) {
+        String filePath = file.toString();
+        if (!filePath.endsWith(".js") || isIgnored(file)) {
+            return false;
+        }
+        if (keywords != null && !keywords.matches(filePath)) {
+            return false;
+        }
+        if (minSizeBytes > 0 && attrs.size() <= minSizeBytes) {
+            return false;
+        }
+        // 与输出清单一致的文件已经是压缩结果，直接跳过
+        return manifest == null || !manifest.isUnchanged(file, attrs);
+    }
+
+    /**
+     * 判断文件或目录是否位于排除目录中
+     */
+    boolean isIgnored(Path path) {
+        String text = path.toString();
+        if (File.separatorChar != '/') {
+            text = text.replace(File.separatorChar, '/');
+        }
+        return text.contains(ignoreDir);
+    }
+
+    /**
+     * 并行遍历一个目录：子目录拆分为子任务，文件在当前线程过滤
+     */
+    private class DirectoryTask extends RecursiveAction {
+        private final Path dir;
+        private final Consumer<File> sink;
+
+        DirectoryTask(Path dir, Consumer<File> sink) {
+            this.dir = dir;
+            this.sink = sink;
+        }
+
+        @Override
+        protected void compute() {
+            if (isIgnored(dir)) {
+                return;
+            }
+            List<DirectoryTask> subtasks = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes attrs;
+                    try {
+                        attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        err.println("⚠️ 访问文件失败：" + entry + "，原因：" + e.getMessage());
+                        continue;
+                    }
+                    if (attrs.isDirectory()) {
+                        DirectoryTask task = new DirectoryTask(entry, sink);
+                        task.fork();
+                        subtasks.add(task);
+                    } else {
+                        visitFile(entry, attrs, sink);
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                err.println("⚠️ 访问文件失败：" + dir + "，原因：" + e.getMessage());
+            }
+            for (DirectoryTask task : subtasks) {
+                task.join();
+            }
+        }
+    }
+}
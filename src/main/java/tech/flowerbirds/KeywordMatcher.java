@@ -0,0 +1,135 @@
+package tech.flowerbirds;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 多关键字匹配（Aho–Corasick 自动机）
+ * 一次扫描路径字符串即可判断是否包含任意一个关键字，耗时与关键字个数无关
+ */
+final class KeywordMatcher {
+
+    private final int[] asciiIndex = new int[128];                    // ASCII 字符到字母表下标
+    private final Map<Character, Integer> otherIndex = new HashMap<>(); // 其他字符到字母表下标
+    private final int[][] transitions;  // 状态转移表：状态 × 字母表下标
+    private final boolean[] accepting;  // 到达该状态时是否已匹配到某个关键字
+    private final boolean matchesAll;   // 存在空关键字时任何路径都匹配（与 String.contains("") 一致）
+
+    private KeywordMatcher(String[] keywords) {
+        Arrays.fill(asciiIndex, -1);
+        boolean hasEmpty = false;
+        int alphabetSize = 0;
+        for (String keyword : keywords) {
+            if (keyword.isEmpty()) {
+                hasEmpty = true;
+            }
+            for (int i = 0; i < keyword.length(); i++) {
+                if (index(keyword.charAt(i)) < 0) {
+                    char c = keyword.charAt(i);
+                    if (c < 128) {
+                        asciiIndex[c] = alphabetSize++;
+                    } else {
+                        otherIndex.put(c, alphabetSize++);
+                    }
+                }
+            }
+        }
+        matchesAll = hasEmpty;
+
+        // 1. 构建关键字前缀树
+        List<int[]> trie = new ArrayList<>();
+        List<Boolean> terminal = new ArrayList<>();
+        trie.add(newRow(alphabetSize));
+        terminal.add(false);
+        for (String keyword : keywords) {
+            int state = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                int symbol = index(keyword.charAt(i));
+                if (trie.get(state)[symbol] < 0) {
+                    trie.get(state)[symbol] = trie.size();
+                    trie.add(newRow(alphabetSize));
+                    terminal.add(false);
+                }
+                state = trie.get(state)[symbol];
+            }
+            terminal.set(state, true);
+        }
+
+        // 2. 按层遍历计算失配指针，并把失配跳转直接展开到转移表中
+        int states = trie.size();
+        transitions = trie.toArray(new int[states][]);
+        accepting = new boolean[states];
+        for (int i = 0; i < states; i++) {
+            accepting[i] = terminal.get(i);
+        }
+        int[] fail = new int[states];
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int symbol = 0; symbol < alphabetSize; symbol++) {
+            int next = transitions[0][symbol];
+            if (next < 0) {
+                transitions[0][symbol] = 0;
+            } else {
+                fail[next] = 0;
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            accepting[state] |= accepting[fail[state]];
+            for (int symbol = 0; symbol < alphabetSize; symbol++) {
+                int next = transitions[state][symbol];
+                if (next < 0) {
+                    transitions[state][symbol] = transitions[fail[state]][symbol];
+                } else {
+                    fail[next] = transitions[fail[state]][symbol];
+                    queue.add(next);
+                }
+            }
+        }
+    }
+
+    /**
+     * 创建关键字匹配器
+     * @return 没有关键字时返回 null，表示不过滤
+     */
+    static KeywordMatcher of(String[] keywords) {
+        return keywords.length == 0 ? null : new KeywordMatcher(keywords);
+    }
+
+    /**
+     * 判断文本中是否包含任意一个关键字
+     */
+    boolean matches(CharSequence text) {
+        if (matchesAll) {
+            return true;
+        }
+        int state = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            int symbol = index(text.charAt(i));
+            state = symbol < 0 ? 0 : transitions[state][symbol];
+            if (accepting[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int index(char c) {
+        if (c < 128) {
+            return asciiIndex[c];
+        }
+        Integer index = otherIndex.get(c);
+        return index == null ? -1 : index;
+    }
+
+    private static int[] newRow(int size) {
+        int[] row = new int[size];
+        Arrays.fill(row, -1);
+        return row;
+    }
+}
@@ -0,0 +1,276 @@
+package tech.flowerbirds;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 流式代码行数统计（排除空行和注释）
+ * 逐字符扫描，用一个小状态机识别单行注释、多行注释、字符串和正则字面量，不为每一行创建 String
+ * 代码中单独的 / 是除号还是正则开始，按前一个有效记号判断：运算符、左括号、行首或 return 等关键字之后是正则
+ * 一行中只要在注释之外出现任何非空白字符就算作代码行，例如注释结束符之后还有代码的行
+ * UTF-8 中所有多字节字符的字节都大于 0x7F，按字节扫描时直接视为普通代码字符即可
+ */
+final class LineCounter {
+
+    private static final int CODE = 0;           // 普通代码
+    private static final int LINE_COMMENT = 1;   // 单行注释 //
+    private static final int BLOCK_COMMENT = 2;  // 多行注释 /* */
+    private static final int SINGLE_QUOTE = 3;   // '字符串'
+    private static final int DOUBLE_QUOTE = 4;   // "字符串"
+    private static final int TEMPLATE = 5;       // `模板字符串`，可以跨行
+    private static final int REGEX = 6;          // /正则字面量/
+
+    /** 这些字符之后的 / 是正则开始 */
+    private static final String REGEX_PRECEDERS = "(,=:[!&|?{};+-*%<>~^";
+    /** 这些关键字之后的 / 是正则开始 */
+    private static final String[] REGEX_KEYWORDS = {
+            "return", "typeof", "instanceof", "in", "of", "new", "delete", "void",
+            "throw", "case", "do", "else", "yield", "await"
+    };
+    private static final int MAX_KEYWORD_LENGTH = 10;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private int state = CODE;
+    private boolean lineHasCode;     // 当前行是否已出现代码
+    private boolean pendingSlash;    // 上一个字符是代码中的 /，需要看下一个字符才能确定是否为注释开始
+    private boolean pendingStar;     // 多行注释中上一个字符是 *
+    private boolean escaped;         // 字符串或正则中上一个字符是反斜杠
+    private boolean inCharClass;     // 正则中的 [...]，其中的 / 不结束正则
+    private int lastToken;           // 代码中上一个非空白字符（0 表示文件开头），用于区分除号和正则
+    private boolean inWord;          // 上一个字符是标识符字符，下一个标识符字符接在当前标识符后面
+    private final char[] word = new char[MAX_KEYWORD_LENGTH];
+    private int wordLength;          // 最近一个标识符的长度，超过 MAX_KEYWORD_LENGTH 时不再记录
+    private boolean afterCarriageReturn; // 上一个字符是 \r（\r\n 只算一个换行）
+    private long codeLines;
+
+    private LineCounter() {
+    }
+
+    /**
+     * 统计字节内容（UTF-8 或其他兼容 ASCII 的编码）的代码行数
+     */
+    static long count(byte[] bytes) {
+        return count(bytes, 0, bytes.length);
+    }
+
+    static long count(byte[] bytes, int offset, int length) {
+        LineCounter counter = new LineCounter();
+        counter.feed(bytes, offset, length);
+        return counter.finish();
+    }
+
+    /**
+     * 统计字符串（例如编译器输出）的代码行数
+     */
+    static long count(CharSequence text) {
+        LineCounter counter = new LineCounter();
+        for (int i = 0, n = text.length(); i < n; i++) {
+            counter.accept(text.charAt(i));
+        }
+        return counter.finish();
+    }
+
+    /**
+     * 以固定大小的缓冲区流式读取文件并统计代码行数
+     */
+    static long count(Path file) throws IOException {
+        LineCounter counter = new LineCounter();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) > 0) {
+                counter.feed(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+        }
+        return counter.finish();
+    }
+
+    private void feed(byte[] bytes, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            accept(bytes[i] & 0xff);
+        }
+    }
+
+    private void accept(int c) {
+        if (c == '\n' || c == '\r') {
+            if (c == '\n' && afterCarriageReturn) {
+                afterCarriageReturn = false;
+                return;
+            }
+            afterCarriageReturn = c == '\r';
+            endLine();
+            return;
+        }
+        afterCarriageReturn = false;
+
+        switch (state) {
+            case CODE:
+                if (pendingSlash) {
+                    pendingSlash = false;
+                    if (c == '/') {
+                        state = LINE_COMMENT;
+                        return;
+                    }
+                    if (c == '*') {
+                        state = BLOCK_COMMENT;
+                        pendingStar = false;
+                        return;
+                    }
+                    lineHasCode = true;
+                    if (regexAllowed()) {
+                        state = REGEX;
+                        escaped = false;
+                        inCharClass = false;
+                        acceptRegex(c);
+                        return;
+                    }
+                    lastToken = '/'; // 除号
+                    inWord = false;
+                }
+                if (c <= ' ') {
+                    inWord = false;
+                    return;
+                }
+                if (c == '/') {
+                    pendingSlash = true;
+                    return;
+                }
+                lineHasCode = true;
+                if (isIdentifierChar(c)) {
+                    if (!inWord) {
+                        inWord = true;
+                        wordLength = 0;
+                    }
+                    if (wordLength < MAX_KEYWORD_LENGTH) {
+                        word[wordLength] = (char) c;
+                    }
+                    wordLength++;
+                } else {
+                    inWord = false;
+                }
+                lastToken = c;
+                if (c == '\'') {
+                    state = SINGLE_QUOTE;
+                } else if (c == '"') {
+                    state = DOUBLE_QUOTE;
+                } else if (c == '`') {
+                    state = TEMPLATE;
+                }
+                return;
+            case LINE_COMMENT:
+                return;
+            case BLOCK_COMMENT:
+                if (pendingStar && c == '/') {
+                    state = CODE;
+                    pendingStar = false;
+                } else {
+                    pendingStar = c == '*';
+                }
+                return;
+            case REGEX:
+                lineHasCode = true;
+                acceptRegex(c);
+                return;
+            default:
+                // 字符串内容都算作代码
+                lineHasCode = true;
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if ((c == '\'' && state == SINGLE_QUOTE)
+                        || (c == '"' && state == DOUBLE_QUOTE)
+                        || (c == '`' && state == TEMPLATE)) {
+                    state = CODE;
+                }
+        }
+    }
+
+    private void acceptRegex(int c) {
+        if (escaped) {
+            escaped = false;
+        } else if (c == '\\') {
+            escaped = true;
+        } else if (c == '[') {
+            inCharClass = true;
+        } else if (c == ']') {
+            inCharClass = false;
+        } else if (c == '/' && !inCharClass) {
+            // 正则是一个操作数，之后的 / 是除号；标志 g、i 等按普通标识符处理
+            state = CODE;
+            lastToken = ')';
+            inWord = false;
+        }
+    }
+
+    /**
+     * 根据上一个有效记号判断代码中的 / 是否为正则开始
+     */
+    private boolean regexAllowed() {
+        if (lastToken == 0 || REGEX_PRECEDERS.indexOf(lastToken) >= 0) {
+            return true;
+        }
+        if (!isIdentifierChar(lastToken) || wordLength > MAX_KEYWORD_LENGTH) {
+            return false;
+        }
+        for (String keyword : REGEX_KEYWORDS) {
+            if (keyword.length() == wordLength && matchesWord(keyword)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesWord(String keyword) {
+        for (int i = 0; i < wordLength; i++) {
+            if (keyword.charAt(i) != word[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isIdentifierChar(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '_' || c == '$' || c >= 0x80;
+    }
+
+    private void endLine() {
+        if (pendingSlash) {
+            lineHasCode = true;
+            pendingSlash = false;
+        }
+        if (lineHasCode) {
+            codeLines++;
+        }
+        lineHasCode = false;
+        pendingStar = false;
+        inWord = false;
+        if (state == LINE_COMMENT) {
+            state = CODE;
+        } else if (state == REGEX) {
+            // 正则不能跨行，未闭合时回到代码状态重新同步
+            state = CODE;
+            escaped = false;
+            lastToken = ')';
+        } else if (state == SINGLE_QUOTE || state == DOUBLE_QUOTE) {
+            // 普通字符串不能跨行，除非行尾是续行符
+            if (escaped) {
+                escaped = false;
+            } else {
+                state = CODE;
+            }
+        } else if (state == TEMPLATE) {
+            escaped = false;
+        }
+    }
+
+    private long finish() {
+        endLine();
+        return codeLines;
+    }
+}
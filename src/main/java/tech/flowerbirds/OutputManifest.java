@@ -0,0 +1,152 @@
+package tech.flowerbirds;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 输出清单：记录本工具生成的压缩文件指纹（路径、大小、修改时间、内容哈希）
+ * 再次运行时，大小和修改时间仍与清单一致的文件说明已经是压缩结果，扫描阶段直接跳过，无需读取文件内容
+ *
+ * 文件格式（每行一个条目，制表符分隔）：大小  修改时间(毫秒)  SHA-256  绝对路径
+ */
+final class OutputManifest {
+
+    private static final String HEADER = "# jscompiler-manifest v1";
+
+    /**
+     * 单个输出文件的指纹
+     */
+    private static class Entry {
+        final long size;
+        final long lastModified;
+        final String hash;
+
+        Entry(long size, long lastModified, String hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+
+    private final Path manifestFile;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicInteger recorded = new AtomicInteger();
+
+    private OutputManifest(Path manifestFile) {
+        this.manifestFile = manifestFile;
+    }
+
+    /**
+     * 只保存在内存中的空清单（监听模式下用于识别本工具刚写入的文件），file() 返回 null，不能保存
+     */
+    static OutputManifest inMemory() {
+        return new OutputManifest(null);
+    }
+
+    /**
+     * 加载清单文件，文件不存在时返回空清单
+     */
+    static OutputManifest load(Path manifestFile) throws IOException {
+        OutputManifest manifest = new OutputManifest(manifestFile);
+        if (!Files.exists(manifestFile)) {
+            return manifest;
+        }
+        for (String line : Files.readAllLines(manifestFile, StandardCharsets.UTF_8)) {
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("\t", 4);
+            if (parts.length < 4) {
+                continue;
+            }
+            try {
+                manifest.entries.put(parts[3],
+                        new Entry(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2]));
+            } catch (NumberFormatException e) {
+                // 忽略损坏的行
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * 判断文件是否仍是上次生成的压缩结果（只比较扫描时已获得的大小和修改时间，不读取内容）
+     */
+    boolean isUnchanged(Path file, BasicFileAttributes attrs) {
+        Entry entry = entries.get(key(file));
+        if (entry != null
+                && entry.size == attrs.size()
+                && entry.lastModified == attrs.lastModifiedTime().toMillis()) {
+            skipped.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 记录刚写入的压缩结果
+     * @param output 写入文件的内容
+     */
+    void record(Path file, String output) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        String hash = CompileCache.toHex(CompileCache.sha256().digest(output.getBytes(StandardCharsets.UTF_8)));
+        entries.put(key(file), new Entry(attrs.size(), attrs.lastModifiedTime().toMillis(), hash));
+        recorded.incrementAndGet();
+    }
+
+    /**
+     * 保存清单（先写临时文件再替换，避免中途退出留下残缺的清单）
+     */
+    void save() throws IOException {
+        List<String> paths = new ArrayList<>(entries.keySet());
+        Collections.sort(paths);
+        Path absolute = manifestFile.toAbsolutePath();
+        Path parent = absolute.getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (String path : paths) {
+                Entry entry = entries.get(path);
+                writer.write(entry.size + "\t" + entry.lastModified + "\t" + entry.hash + "\t" + path);
+                writer.newLine();
+            }
+        }
+        try {
+            Files.move(temp, absolute, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /** 扫描时因清单匹配而跳过的文件数 */
+    int skipped() {
+        return skipped.get();
+    }
+
+    /** 本次运行新记录的文件数 */
+    int recorded() {
+        return recorded.get();
+    }
+
+    Path file() {
+        return manifestFile;
+    }
+
+    private static String key(Path file) {
+        return file.toAbsolutePath().normalize().toString();
+    }
+}
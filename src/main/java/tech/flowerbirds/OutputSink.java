@@ -0,0 +1,50 @@
+package tech.flowerbirds;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+
+/**
+ * 压缩结果的输出位置
+ * 每个编译成功的文件调用一次 write；生成 Source Map 时，编译阶段先通过 openSourceMap 流式写出映射，
+ * 随压缩结果一起生效，该文件最终没有写入时调用 discardSourceMap 丢弃
+ * 不同源文件的调用可能来自多个线程，实现需要是线程安全的
+ */
+public interface OutputSink {
+
+    /**
+     * 写入一个源文件的压缩结果
+     * @param source 源文件
+     * @param code 压缩结果（UTF-8）
+     * @return 写入的文件，结果没有写入磁盘时返回 null
+     */
+    Path write(Path source, byte[] code) throws IOException;
+
+    /**
+     * 打开该源文件的 Source Map 输出，由调用方写完后关闭
+     * @return 不支持 Source Map 时返回 null，此时压缩结果末尾也不添加 sourceMappingURL 注释
+     */
+    default Writer openSourceMap(Path source) throws IOException {
+        return null;
+    }
+
+    /**
+     * 丢弃已写出但尚未随压缩结果生效的 Source Map
+     */
+    default void discardSourceMap(Path source) throws IOException {
+    }
+
+    /**
+     * 覆盖源文件（命令行工具的行为）：先写入同目录下的临时文件再原子替换，Source Map 写入同目录的 xxx.js.map
+     */
+    static OutputSink overwrite() {
+        return new FileOutput();
+    }
+
+    /**
+     * 保存在内存中，不写入磁盘
+     */
+    static InMemoryOutput inMemory() {
+        return new InMemoryOutput();
+    }
+}
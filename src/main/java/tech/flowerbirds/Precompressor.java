@@ -0,0 +1,180 @@
+package tech.flowerbirds;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.*;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 预压缩：把刚写入的压缩结果直接从内存压缩为 .gz 等旁路文件，供静态服务器直接使用，不再重新读取输出文件
+ * 压缩在独立的线程池中执行，与后续文件的编译并行；等待压缩的文件数有上限，压缩跟不上时写入线程阻塞
+ */
+final class Precompressor {
+
+    /**
+     * 支持的预压缩格式
+     */
+    enum Format {
+        GZIP("gzip", ".gz");
+
+        final String name;
+        final String extension;
+
+        Format(String name, String extension) {
+            this.name = name;
+            this.extension = extension;
+        }
+
+        static Format of(String name) {
+            for (Format format : values()) {
+                if (format.name.equalsIgnoreCase(name)) {
+                    return format;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final List<Format> formats;
+    private final ExecutorService executor;
+    private final Semaphore pending;   // 已提交但尚未压缩完的文件数上限
+    private final PrintStream err;
+    private final AtomicInteger files = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicLong inputBytes = new AtomicLong();
+    private final AtomicLong[] compressedBytes;
+
+    Precompressor(List<Format> formats, int threads, PrintStream err) {
+        this.formats = formats;
+        this.err = err;
+        int count = Math.max(1, threads);
+        this.pending = new Semaphore(count * 2);
+        AtomicInteger index = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(count, runnable -> {
+            Thread thread = new Thread(runnable, "js-compress-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.compressedBytes = new AtomicLong[Format.values().length];
+        for (int i = 0; i < compressedBytes.length; i++) {
+            compressedBytes[i] = new AtomicLong();
+        }
+    }
+
+    /**
+     * 提交一个已写入的文件，按各个格式生成旁路文件（例如 a.js → a.js.gz）
+     * @param content 写入文件的内容
+     */
+    void submit(Path target, byte[] content) throws InterruptedException {
+        pending.acquire();
+        try {
+            executor.execute(() -> {
+                try {
+                    compress(target, content);
+                } finally {
+                    pending.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            pending.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 等待已提交的文件全部压缩完毕，并停止线程池
+     */
+    void finish() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    /** 成功生成旁路文件的文件数 */
+    int files() {
+        return files.get();
+    }
+
+    /** 生成旁路文件失败的文件数 */
+    int failures() {
+        return failures.get();
+    }
+
+    /** 压缩前的总字节数 */
+    long inputBytes() {
+        return inputBytes.get();
+    }
+
+    /** 某个格式压缩后的总字节数 */
+    long compressedBytes(Format format) {
+        return compressedBytes[format.ordinal()].get();
+    }
+
+    List<Format> formats() {
+        return formats;
+    }
+
+    private void compress(Path target, byte[] content) {
+        try {
+            long[] sizes = new long[formats.size()];
+            for (int i = 0; i < formats.size(); i++) {
+                sizes[i] = write(target, content, formats.get(i));
+            }
+            for (int i = 0; i < formats.size(); i++) {
+                compressedBytes[formats.get(i).ordinal()].addAndGet(sizes[i]);
+            }
+            inputBytes.addAndGet(content.length);
+            files.incrementAndGet();
+        } catch (IOException | RuntimeException e) {
+            failures.incrementAndGet();
+            err.println("⚠️ 预压缩失败：" + target + "，原因：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 写入旁路文件（先写临时文件再替换）
+     * @return 压缩后的字节数
+     */
+    private long write(Path target, byte[] content, Format format) throws IOException {
+        Path sidecar = target.resolveSibling(target.getFileName() + format.extension);
+        Path temp = target.resolveSibling("." + sidecar.getFileName() + "."
+                + UUID.randomUUID().toString().substring(0, 8) + ".tmp");
+        try {
+            try (OutputStream out = open(Files.newOutputStream(temp), format)) {
+                out.write(content);
+            }
+            long size = Files.size(temp);
+            try {
+                Files.move(temp, sidecar, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, sidecar, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return size;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static OutputStream open(OutputStream out, Format format) throws IOException {
+        switch (format) {
+            case GZIP:
+                // 预压缩只做一次，使用最高压缩级别
+                return new GZIPOutputStream(out, 64 * 1024) {
+                    {
+                        def.setLevel(Deflater.BEST_COMPRESSION);
+                    }
+                };
+            default:
+                throw new IllegalArgumentException("不支持的压缩格式: " + format.name);
+        }
+    }
+}
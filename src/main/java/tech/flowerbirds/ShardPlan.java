@@ -0,0 +1,137 @@
+package tech.flowerbirds;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * 多台机器分片编译：把同一批文件确定性地分成 N 份，每台机器只处理其中一份
+ * 按文件大小做贪心装箱（从大到小依次放入当前总大小最小的分片），各分片的源码总大小接近；
+ * 分配只取决于文件的相对路径和大小，与遍历顺序、机器和检出目录无关，各节点无需通信即可得到相同的划分
+ * 文件在完整列表中的位置也按相对路径排序得到，各节点一致，合并时据此还原失败文件列表的顺序
+ */
+final class ShardPlan {
+
+    final int index;   // 当前分片序号，从 1 开始
+    final int count;   // 分片总数
+    private final Map<File, Integer> order = new HashMap<>(); // 本分片的文件在按相对路径排序的完整列表中的位置
+    private final Map<File, String> relativeNames = new HashMap<>(); // 本分片的文件相对于基准目录的路径
+    private final List<File> files = new ArrayList<>();
+    private long bytes;       // 本分片的源码总大小
+    private int totalFiles;   // 所有分片的文件总数
+    private long totalBytes;  // 所有分片的源码总大小
+
+    private ShardPlan(int index, int count) {
+        this.index = index;
+        this.count = count;
+    }
+
+    /**
+     * 解析 K/N 格式的分片参数
+     * @return 格式错误或 K 不在 1..N 范围内时返回 null
+     */
+    static ShardPlan parse(String spec) {
+        int slash = spec.indexOf('/');
+        if (slash <= 0) {
+            return null;
+        }
+        try {
+            int index = Integer.parseInt(spec.substring(0, slash).trim());
+            int count = Integer.parseInt(spec.substring(slash + 1).trim());
+            return count > 0 && index >= 1 && index <= count ? new ShardPlan(index, count) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 从完整文件列表中选出本分片的文件
+     * @param all 完整文件列表（顺序不影响结果）
+     * @param base 计算相对路径的基准目录，相对路径用于大小相同时确定先后，以及确定文件在完整列表中的位置
+     */
+    void select(List<File> all, Path base) {
+        List<Integer> sorted = new ArrayList<>(all.size());
+        long[] sizes = new long[all.size()];
+        String[] names = new String[all.size()];
+        for (int i = 0; i < all.size(); i++) {
+            sorted.add(i);
+            sizes[i] = all.get(i).length();
+            names[i] = relativeName(base, all.get(i));
+        }
+        sorted.sort(Comparator.comparingLong((Integer i) -> sizes[i]).reversed().thenComparing(i -> names[i]));
+
+        // 每个分片的已分配大小，取最小者（相同时取序号小的）
+        PriorityQueue<long[]> bins = new PriorityQueue<>(count,
+                Comparator.comparingLong((long[] bin) -> bin[0]).thenComparingLong(bin -> bin[1]));
+        for (int i = 1; i <= count; i++) {
+            bins.add(new long[]{0, i});
+        }
+        boolean[] selected = new boolean[all.size()];
+        for (int i : sorted) {
+            long[] bin = bins.poll();
+            bin[0] += sizes[i];
+            bins.add(bin);
+            if (bin[1] == index) {
+                selected[i] = true;
+                bytes += sizes[i];
+            }
+            totalBytes += sizes[i];
+        }
+        totalFiles = all.size();
+
+        // 按相对路径排序得到各节点一致的位置，本分片内也按这个顺序处理
+        List<Integer> byName = new ArrayList<>(all.size());
+        for (int i = 0; i < all.size(); i++) {
+            byName.add(i);
+        }
+        byName.sort(Comparator.comparing(i -> names[i]));
+        for (int rank = 0; rank < byName.size(); rank++) {
+            int i = byName.get(rank);
+            if (selected[i]) {
+                files.add(all.get(i));
+                order.put(all.get(i), rank);
+                relativeNames.put(all.get(i), names[i]);
+            }
+        }
+    }
+
+    /** 本分片的文件（按相对路径排序） */
+    List<File> files() {
+        return files;
+    }
+
+    /** 文件在按相对路径排序的完整文件列表中的位置，不属于本分片时返回 -1 */
+    int orderOf(File file) {
+        Integer i = order.get(file);
+        return i == null ? -1 : i;
+    }
+
+    /** 文件相对于基准目录的路径（以 / 分隔，不在基准目录下时为绝对路径），不属于本分片时返回 null */
+    String nameOf(File file) {
+        return relativeNames.get(file);
+    }
+
+    long bytes() {
+        return bytes;
+    }
+
+    int totalFiles() {
+        return totalFiles;
+    }
+
+    long totalBytes() {
+        return totalBytes;
+    }
+
+    private static String relativeName(Path base, File file) {
+        Path path = file.toPath().toAbsolutePath().normalize();
+        Path root = base.toAbsolutePath().normalize();
+        String name = path.startsWith(root) ? root.relativize(path).toString() : path.toString();
+        return name.replace(File.separatorChar, '/');
+    }
+}
@@ -0,0 +1,145 @@
+package tech.flowerbirds;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 单个分片的处理结果，写入文本文件后由 -merge 合并为与单机运行相同的汇总
+ * 文件格式（制表符分隔，路径放在最后一列）：
+ * <pre>
+ * # jscompiler shard result
+ * shard     分片序号  分片总数
+ * cloc      代码行数统计模式
+ * elapsed   分片总耗时（毫秒）
+ * file      完整列表中的位置  ok|failed|timeout  压缩前行数  压缩后行数  耗时（毫秒）  文件路径
+ * </pre>
+ * 位置按相对路径排序得到（见 ShardPlan），文件路径相对于扫描目录或文件列表的根目录，与各节点的检出目录无关
+ */
+final class ShardResult {
+
+    static final String HEADER = "# jscompiler shard result";
+
+    /**
+     * 单个文件的处理结果
+     */
+    static final class Entry {
+        final int order;
+        final boolean success;
+        final boolean timedOut;
+        final long beforeCount;
+        final long afterCount;
+        final long millis;
+        final String path;
+
+        Entry(int order, boolean success, boolean timedOut, long beforeCount, long afterCount, long millis, String path) {
+            this.order = order;
+            this.success = success;
+            this.timedOut = timedOut;
+            this.beforeCount = beforeCount;
+            this.afterCount = afterCount;
+            this.millis = millis;
+            this.path = path;
+        }
+    }
+
+    final int index;
+    final int count;
+    String clocMode = "";
+    long elapsedMillis;
+    private final List<Entry> entries = new ArrayList<>();
+
+    ShardResult(int index, int count) {
+        this.index = index;
+        this.count = count;
+    }
+
+    void add(Entry entry) {
+        entries.add(entry);
+    }
+
+    List<Entry> entries() {
+        return entries;
+    }
+
+    /**
+     * 写入结果文件
+     */
+    void write(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(HEADER + "\n");
+            writer.write("shard\t" + index + "\t" + count + "\n");
+            writer.write("cloc\t" + clocMode + "\n");
+            writer.write("elapsed\t" + elapsedMillis + "\n");
+            for (Entry e : entries) {
+                writer.write("file\t" + e.order + "\t" + (e.success ? "ok" : e.timedOut ? "timeout" : "failed") + "\t" + e.beforeCount
+                        + "\t" + e.afterCount + "\t" + e.millis + "\t" + e.path + "\n");
+            }
+        }
+    }
+
+    /**
+     * 读取结果文件
+     * @throws IOException 文件无法读取或格式错误
+     */
+    static ShardResult read(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(reader.readLine())) {
+                throw new IOException("不是分片结果文件: " + file);
+            }
+            ShardResult result = null;
+            String clocMode = "";
+            long elapsed = 0;
+            String line;
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.split("\t", 7);
+                try {
+                    switch (fields[0]) {
+                        case "shard":
+                            result = new ShardResult(Integer.parseInt(fields[1]), Integer.parseInt(fields[2]));
+                            break;
+                        case "cloc":
+                            clocMode = fields.length > 1 ? fields[1] : "";
+                            break;
+                        case "elapsed":
+                            elapsed = Long.parseLong(fields[1]);
+                            break;
+                        case "file":
+                            if (result == null || fields.length < 7) {
+                                throw new IOException("格式错误");
+                            }
+                            result.add(new Entry(Integer.parseInt(fields[1]), fields[2].equals("ok"), fields[2].equals("timeout"),
+                                    Long.parseLong(fields[3]), Long.parseLong(fields[4]), Long.parseLong(fields[5]), fields[6]));
+                            break;
+                        default:
+                            // 忽略未知的记录，便于以后增加字段
+                    }
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    throw new IOException("格式错误: " + file + " 第 " + lineNumber + " 行");
+                } catch (IOException e) {
+                    throw new IOException(e.getMessage() + ": " + file + " 第 " + lineNumber + " 行");
+                }
+            }
+            if (result == null) {
+                throw new IOException("缺少分片信息: " + file);
+            }
+            result.clocMode = clocMode;
+            result.elapsedMillis = elapsed;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package tech.flowerbirds;
+
+import com.google.javascript.jscomp.CompilerOptions;
+import com.google.javascript.jscomp.SourceMap;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Source Map 输出（与压缩结果同目录的 xxx.js.map）
+ * 映射由 Closure 的代码生成器在 toSource 输出代码的同时记录，不再额外序列化 AST；
+ * 生成后直接流式写入输出位置（OutputSink.openSourceMap），不在内存中拼出完整的 JSON 字符串
+ * 源文件会被压缩结果覆盖，因此 Source Map 内嵌原始源码（sourcesContent），不依赖原文件
+ */
+final class SourceMaps {
+
+    private SourceMaps() {
+    }
+
+    /**
+     * 配置编译选项，使 toSource 同时记录映射
+     * @param files 本次编译的源文件，Source Map 中的源文件路径相对于各自所在目录（即 .map 文件所在目录）
+     */
+    static void configure(CompilerOptions options, Collection<File> files) {
+        // Compiler 只检查该路径是否为空来决定是否记录映射，文件由本工具自行写入
+        options.setSourceMapOutputPath(mapFile(files.iterator().next().toPath()).toString());
+        options.setSourceMapIncludeSourcesContent(true);
+        // 按目录去掉绝对路径前缀，较深的目录排在前面，先于其上级目录匹配
+        TreeSet<String> dirs = new TreeSet<>(Comparator.comparingInt(String::length).reversed().thenComparing(Comparator.naturalOrder()));
+        for (File file : files) {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                dirs.add(parent.getPath() + File.separator);
+            }
+        }
+        List<SourceMap.LocationMapping> mappings = new ArrayList<>();
+        for (String dir : dirs) {
+            mappings.add(new SourceMap.PrefixLocationMapping(dir, ""));
+        }
+        options.setSourceMapLocationMappings(mappings);
+    }
+
+    /**
+     * 压缩结果与 Source Map 关联的注释，追加在压缩结果末尾
+     */
+    static String comment(File jsFile) {
+        return "\n//# sourceMappingURL=" + jsFile.getName() + ".map\n";
+    }
+
+    /**
+     * 源文件对应的 Source Map 文件
+     */
+    static Path mapFile(Path jsFile) {
+        return jsFile.resolveSibling(jsFile.getFileName() + ".map");
+    }
+}
@@ -0,0 +1,142 @@
+package tech.flowerbirds;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 监听目录变化（WatchService），收集需要重新编译的文件
+ * - 一段时间内连续发生的变化合并为一批（防抖），批量编译
+ * - 只检查发生变化的文件，开销与变化的文件数有关，与目录大小无关
+ * - 变化的文件使用与扫描相同的过滤条件；本工具刚写入的压缩结果与输出清单一致，不会再次触发编译
+ */
+final class SourceWatcher implements Closeable {
+
+    private final Path root;
+    private final JsFileScanner filter;
+    private final long debounceMillis;
+    private final PrintStream err;
+    private final WatchService service;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+
+    /**
+     * @param filter 判断文件是否需要处理（排除目录、关键字、文件大小、输出清单）
+     * @param debounceMillis 最后一次变化之后等待多久（毫秒）没有新变化才开始编译
+     */
+    SourceWatcher(Path root, JsFileScanner filter, long debounceMillis, PrintStream err) throws IOException {
+        this.root = root;
+        this.filter = filter;
+        this.debounceMillis = Math.max(1, debounceMillis);
+        this.err = err;
+        this.service = root.getFileSystem().newWatchService();
+        register(root);
+    }
+
+    /** 已监听的目录数 */
+    int directoryCount() {
+        return directories.size();
+    }
+
+    /**
+     * 阻塞等待下一批变化
+     * @return 需要重新编译的文件（按发现顺序），可能为空（例如只有不相关的文件发生变化）
+     */
+    List<File> awaitChanges() throws InterruptedException, IOException {
+        Set<Path> changed = new LinkedHashSet<>();
+        boolean overflow = collect(service.take(), changed);
+        WatchKey key;
+        while ((key = service.poll(debounceMillis, TimeUnit.MILLISECONDS)) != null) {
+            overflow |= collect(key, changed);
+        }
+
+        List<File> files = new ArrayList<>();
+        if (overflow) {
+            // 事件过多时部分变化已丢失，退回到完整扫描（已压缩且未改动的文件仍由输出清单过滤）
+            err.println("⚠️ 文件变化过多，重新扫描整个目录");
+            filter.scan(root, files::add);
+            return files;
+        }
+        for (Path path : changed) {
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                continue; // 临时文件等已被删除
+            }
+            if (attrs.isDirectory()) {
+                // 新建（或移入）的目录：开始监听，并处理其中已有的文件
+                if (!filter.isIgnored(path)) {
+                    register(path);
+                    filter.scan(path, files::add);
+                }
+            } else if (filter.accepts(path, attrs)) {
+                files.add(path.toFile());
+            }
+        }
+        return files;
+    }
+
+    /**
+     * 读取一个目录的事件
+     * @return 是否发生了事件丢失
+     */
+    private boolean collect(WatchKey key, Set<Path> changed) {
+        Path dir = directories.get(key);
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+            } else if (dir != null) {
+                changed.add(dir.resolve((Path) event.context()));
+            }
+        }
+        if (!key.reset()) {
+            directories.remove(key); // 目录已被删除
+        }
+        return overflow;
+    }
+
+    /**
+     * 监听目录及其所有子目录（排除目录整棵跳过）
+     */
+    private void register(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (filter.isIgnored(dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                WatchKey key = dir.register(service,
+                        StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                directories.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                err.println("⚠️ 访问文件失败：" + file + "，原因：" + exc.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        service.close();
+    }
+}
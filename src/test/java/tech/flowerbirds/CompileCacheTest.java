@@ -0,0 +1,68 @@
+package tech.flowerbirds;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * CompileCache 的读写和大小上限
+ */
+public class CompileCacheTest {
+
+    private Path dir;
+
+    @Before
+    public void createDirectory() throws IOException {
+        dir = Files.createTempDirectory("jscompiler-cache-test");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void returnsStoredOutput() throws IOException {
+        CompileCache cache = new CompileCache(dir, 0, "level=SIMPLE");
+        String key = cache.key(bytes("var a = 1;"), null);
+        assertNull(cache.get(key));
+        cache.put(key, "var a=1;");
+        assertEquals("var a=1;", cache.get(key));
+    }
+
+    @Test
+    public void evictsDuringBatchOnceOverBudget() throws IOException {
+        CompileCache cache = new CompileCache(dir, 10_000, "level=SIMPLE");
+        StringBuilder output = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            output.append('x');
+        }
+        for (int i = 0; i < 50; i++) {
+            cache.put(cache.key(bytes("source " + i), null), output.toString());
+        }
+        assertTrue(totalBytes() <= 10_000);
+    }
+
+    private long totalBytes() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            return paths.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+        }
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
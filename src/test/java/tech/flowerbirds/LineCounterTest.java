@@ -0,0 +1,74 @@
+package tech.flowerbirds;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * LineCounter 的代码行数统计：注释、字符串、模板字符串、正则字面量和换行符
+ */
+public class LineCounterTest {
+
+    private static void assertLines(long expected, String source) {
+        assertEquals(source, expected, LineCounter.count(source));
+        // 按字节统计的结果应与按字符统计一致
+        assertEquals(source, expected, LineCounter.count(source.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void skipsBlankLinesAndComments() {
+        assertLines(2, "var a = 1;\n\n// comment\n/* block\n comment */\nvar b = 2;\n");
+    }
+
+    @Test
+    public void countsCodeAfterBlockComment() {
+        assertLines(2, "/* a */ var a = 1;\nvar b = 2; /* b\n c */\n");
+    }
+
+    @Test
+    public void commentMarkersInsideStringsAreCode() {
+        assertLines(3, "var a = '//';\nvar b = \"/*\";\nvar c = 1;\n// comment\n");
+    }
+
+    @Test
+    public void templateLiteralSpansLines() {
+        // 模板字符串中的 // 是内容而不是注释；其中的空行与 cloc 一样按空行处理
+        assertLines(3, "var t = `line one\n\n// not a comment\n`;\n// comment\n");
+    }
+
+    @Test
+    public void regexWithEscapedSlashAndStar() {
+        assertLines(3, "var r = /\\/*x/;\nvar a = 1;\n// comment\nvar b = 2;\n");
+    }
+
+    @Test
+    public void regexContainingQuote() {
+        assertLines(3, "s.split(/\"/);\nvar a = 1;\n// comment\nvar b = 2;\n");
+        assertLines(2, "var r = /'/g, q = 1;\n// comment\nx();\n");
+    }
+
+    @Test
+    public void regexAfterKeywordWithCharacterClass() {
+        assertLines(2, "return /[/*]/.test(s);\n// comment\nx();\n");
+    }
+
+    @Test
+    public void divisionIsNotRegex() {
+        assertLines(2, "var x = a / b / c;\n// comment\nvar y = 1;\n");
+        assertLines(2, "f(x) / 2; /* comment */\n// comment\nx();\n");
+        assertLines(2, "var re = /a\\/b/i;\n/* comment\n */\nx = 1 / 2 /* z */;\n");
+    }
+
+    @Test
+    public void carriageReturnLineFeedCountsAsOneLineBreak() {
+        assertLines(2, "var a = 1;\r\n\r\n// comment\r\nvar b = 2;\r\n");
+        assertLines(2, "var a = 1;\r\r// comment\rvar b = 2;");
+    }
+
+    @Test
+    public void unterminatedStringEndsAtLineBreak() {
+        assertLines(2, "var a = 'oops\n// comment\nvar b = 2;\n");
+    }
+}